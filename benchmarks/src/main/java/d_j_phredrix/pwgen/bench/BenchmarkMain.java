@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result comes
+ * with its allocation rate ({@code gc.alloc.rate.norm} is bytes per
+ * operation). Accepts the usual JMH command line, e.g. a benchmark regex or
+ * {@code -rf json -rff results.json} to keep a baseline for comparison.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException
+    {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+
+package d_j_phredrix.pwgen.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import d_j_phredrix.pwgen.core.Alphabet;
+import d_j_phredrix.pwgen.core.Generator;
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+
+/**
+ * Batch generation with the vectorized symbol mapping and with the scalar
+ * loop it falls back to. The two benchmarks run the same code; only the
+ * {@code vector} fork adds the incubator module, so comparing them shows
+ * the speedup on the host's vector width. One operation is a batch of
+ * {@value #BATCH} passwords; the {@code seeded} source keeps the random
+ * bytes cheap, so the mapping dominates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BulkMappingBenchmark {
+
+    @Param({ "16" })
+    public int length;
+
+    @Param({ "DIGIT", "UPPER,LOWER,DIGIT", "UPPER,LOWER,DIGIT,PUNCTUATION,SPECIAL" })
+    public String charSets;
+
+    @Param({ "seeded:1", "ChaCha20" })
+    public String randomSource;
+
+    @Setup
+    public void setup(BenchmarkParams params)
+    {
+        final boolean wantVector = params.getBenchmark().endsWith(".vector"); //$NON-NLS-1$
+        if (wantVector != Generator.isVectorAccelerated())
+        {
+            // Otherwise the two sets of results would measure the same path.
+            throw new IllegalStateException("Vector path " + (wantVector ? "unavailable" : "unexpectedly enabled")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        final String[] names = charSets.split(","); //$NON-NLS-1$
+        final CharSetType[] set = new CharSetType[names.length];
+        for (int ii = 0; ii < names.length; ++ii)
+        {
+            set[ii] = CharSetType.valueOf(names[ii]);
+        }
+        _alphabet = Generator.getAlphabet(set);
+        _gen = new Generator(randomSource);
+        _arena = new char[BATCH * length];
+        _offsets = new int[BATCH + 1];
+    }
+
+    @Benchmark
+    @Fork(1)
+    public int scalar()
+    {
+        return _gen.createPasswords(BATCH, _alphabet, length, length, _arena, _offsets);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+    public int vector()
+    {
+        return _gen.createPasswords(BATCH, _alphabet, length, length, _arena, _offsets);
+    }
+
+    private Generator _gen;
+    private Alphabet _alphabet;
+    private char[] _arena;
+    private int[] _offsets;
+
+    private static final int BATCH = 1000;
+}
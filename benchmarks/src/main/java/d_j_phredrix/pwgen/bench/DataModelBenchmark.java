@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import d_j_phredrix.pwgen.core.DataModel;
+import d_j_phredrix.pwgen.core.DataModel.ChangeListener;
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+
+/**
+ * Cost of a {@link DataModel} change, including notification of
+ * {@code listeners} registered listeners.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataModelBenchmark {
+
+    @Param({ "1", "8" })
+    public int listeners;
+
+    @Setup
+    public void setup(Blackhole bh)
+    {
+        _data = DataModel.create();
+        for (int ii = 0; ii < listeners; ++ii)
+        {
+            _data.addListener(new ChangeListener() {
+                @Override
+                public void dataChanged(DataModel d, Item whatChanged, Object source)
+                {
+                    bh.consume(whatChanged);
+                }
+
+                @Override
+                public void exceptionOccurred(Exception ex, Object source)
+                {
+                    bh.consume(ex);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void setMinLength()
+    {
+        _data.setMinLength(++_value & 0xff, null);
+    }
+
+    @Benchmark
+    public void toggleCharSet()
+    {
+        if ((++_value & 1) == 0)
+        {
+            _data.addCharSet(CharSetType.DIGIT);
+        }
+        else
+        {
+            _data.removeCharSet(CharSetType.DIGIT);
+        }
+    }
+
+    @Benchmark
+    public CharSetType[] getCharSet()
+    {
+        return _data.getCharSet();
+    }
+
+    @Benchmark
+    public int snapshot()
+    {
+        final DataModel.Snapshot s = _data.snapshot();
+        return s.getMinLength() + s.getMaxLength() + s.getCharSetMask();
+    }
+
+    private DataModel _data;
+    private int _value;
+}
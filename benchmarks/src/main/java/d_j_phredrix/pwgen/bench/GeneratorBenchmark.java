@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import d_j_phredrix.pwgen.core.Alphabet;
+import d_j_phredrix.pwgen.core.Generator;
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({ "8", "16", "64" })
+    public int length;
+
+    @Param({ "LOWER", "UPPER,LOWER,DIGIT", "UPPER,LOWER,DIGIT,PUNCTUATION,SPECIAL" })
+    public String charSets;
+
+    @Setup
+    public void setup()
+    {
+        final String[] names = charSets.split(","); //$NON-NLS-1$
+        _set = new CharSetType[names.length];
+        for (int ii = 0; ii < names.length; ++ii)
+        {
+            _set[ii] = CharSetType.valueOf(names[ii]);
+        }
+        _characterSet = _gen.getCharacterSet(_set);
+        _alphabet = Generator.getAlphabet(_set);
+        _arena = new char[BATCH * length];
+        _offsets = new int[BATCH + 1];
+    }
+
+    @Benchmark
+    public String createPassword()
+    {
+        return _gen.createPassword(_characterSet, length, length);
+    }
+
+    @Benchmark
+    public String createPasswordAlphabet()
+    {
+        return _gen.createPassword(_alphabet, length, length);
+    }
+
+    /**
+     * One operation is a batch of {@value #BATCH} passwords.
+     */
+    @Benchmark
+    public int createPasswords()
+    {
+        return _gen.createPasswords(BATCH, _alphabet, length, length, _arena, _offsets);
+    }
+
+    @Benchmark
+    public String getCharacterSet()
+    {
+        return _gen.getCharacterSet(_set);
+    }
+
+    private final Generator _gen = new Generator();
+    private CharSetType[] _set;
+    private String _characterSet;
+    private Alphabet _alphabet;
+    private char[] _arena;
+    private int[] _offsets;
+
+    private static final int BATCH = 1000;
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.bench;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import d_j_phredrix.pwgen.core.RandomIndexSource;
+import d_j_phredrix.pwgen.core.SecureRandomSource;
+
+/**
+ * Compares the cost per generated character of the original
+ * {@code min + floor((max - min) * nextDouble())} index selection with
+ * {@link RandomIndexSource}. Each operation draws one index; the
+ * {@code bytes} counter is reported in the same unit as the score, so
+ * dividing it by the score gives CSPRNG bytes per character.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RandomIndexBenchmark {
+
+    /**
+     * Counts the bytes requested from the wrapped generator.
+     * {@link SecureRandom#nextDouble()} also ends up in
+     * {@link #nextBytes(byte[])}, so both strategies are measured alike.
+     */
+    private static final class CountingRandom extends SecureRandom {
+        CountingRandom(SecureRandom delegate)
+        {
+            _delegate = delegate;
+        }
+
+        @Override
+        public void nextBytes(byte[] bytes)
+        {
+            _delegate.nextBytes(bytes);
+            _count += bytes.length;
+        }
+
+        long getCount()
+        {
+            return _count;
+        }
+
+        private final SecureRandom _delegate;
+        private long _count;
+        private static final long serialVersionUID = 1L;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Consumed {
+        /** Bytes drawn from the CSPRNG during the iteration. */
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            bytes = 0;
+        }
+    }
+
+    @Param({ "62", "85" })
+    public int alphabetSize;
+
+    @Benchmark
+    public int nextDouble(Consumed consumed)
+    {
+        final long before = _doubles.getCount();
+        final int result = (int) Math.floor(alphabetSize * _doubles.nextDouble());
+        consumed.bytes += _doubles.getCount() - before;
+        return result;
+    }
+
+    @Benchmark
+    public int indexSourceNextInt(Consumed consumed)
+    {
+        final long before = _bits.getCount();
+        final int result = _indices.nextInt(alphabetSize);
+        consumed.bytes += _bits.getCount() - before;
+        return result;
+    }
+
+    private final CountingRandom _doubles = new CountingRandom(new SecureRandom());
+    private final CountingRandom _bits = new CountingRandom(new SecureRandom());
+    private final RandomIndexSource _indices = new RandomIndexSource(new SecureRandomSource(_bits));
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.bench;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import d_j_phredrix.pwgen.core.RandomIndexSource;
+import d_j_phredrix.pwgen.core.SecureRandomSource;
+
+/**
+ * Raw cost of drawing from the platform {@link SecureRandom}, next to the
+ * buffered {@link RandomIndexSource} used by the generator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecureRandomBenchmark {
+
+    @Param({ "8", "512", "65536" })
+    public int bytes;
+
+    @Setup
+    public void setup()
+    {
+        _buffer = new byte[bytes];
+    }
+
+    @Benchmark
+    public byte[] nextBytes()
+    {
+        _rng.nextBytes(_buffer);
+        return _buffer;
+    }
+
+    @Benchmark
+    public double nextDouble()
+    {
+        return _rng.nextDouble();
+    }
+
+    @Benchmark
+    public int indexSourceNextInt()
+    {
+        return _indices.nextInt(62);
+    }
+
+    private final SecureRandom _rng = new SecureRandom();
+    private final RandomIndexSource _indices = new RandomIndexSource(new SecureRandomSource(new SecureRandom()));
+    private byte[] _buffer;
+}
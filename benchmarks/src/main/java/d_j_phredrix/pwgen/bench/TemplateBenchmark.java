@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import d_j_phredrix.pwgen.core.Alphabet;
+import d_j_phredrix.pwgen.core.Generator;
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+import d_j_phredrix.pwgen.core.Template;
+
+/**
+ * Templated batches against plain ones of the same length over all the
+ * printable sets, so the cost of running the compiled program shows
+ * directly. One operation is a batch of {@value #BATCH} passwords.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateBenchmark {
+
+    @Param({ "a{16}", "Aaaa-9999-!!", "[UPPER]{2}[DIGIT]{4}[SPECIAL]", "[UPPER,LOWER,DIGIT]{4}-[upper,lower,digit]{4}" })
+    public String pattern;
+
+    @Setup
+    public void setup()
+    {
+        _template = Template.compile(pattern);
+        _arena = new char[BATCH * _template.getLength()];
+        _offsets = new int[BATCH + 1];
+    }
+
+    @Benchmark
+    public int template()
+    {
+        return _gen.createPasswords(BATCH, _template, _arena, _offsets, null);
+    }
+
+    @Benchmark
+    public int plain()
+    {
+        return _gen.createPasswords(BATCH, ALL, _template.getLength(), _template.getLength(), _arena, _offsets);
+    }
+
+    /**
+     * A cache hit, as when a snapshot's template is looked up again.
+     */
+    @Benchmark
+    public Template compile()
+    {
+        return Template.compile(pattern);
+    }
+
+    private final Generator _gen = new Generator();
+    private Template _template;
+    private char[] _arena;
+    private int[] _offsets;
+
+    private static final int BATCH = 1000;
+    private static final Alphabet ALL = Generator.getAlphabet(CharSetType.UPPER, CharSetType.LOWER, CharSetType.DIGIT,
+            CharSetType.PUNCTUATION, CharSetType.SPECIAL);
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams packed passwords, one per line, through a single reusable direct
+ * buffer into a channel. Characters are written as single bytes, which holds
+ * for all of the built-in alphabets.
+ */
+class ChannelOutput implements AutoCloseable {
+
+    ChannelOutput(WritableByteChannel channel, int bufferSize)
+    {
+        _channel = channel;
+        _buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Writes passwords {@code [0, count)} of a batch laid out as by
+     * {@link d_j_phredrix.pwgen.core.Generator#createPasswords(int, d_j_phredrix.pwgen.core.Alphabet, int, int, char[], int[])}.
+     */
+    void write(char[] arena, int[] offsets, int count) throws IOException
+    {
+        for (int ii = 0; ii < count; ++ii)
+        {
+            final int start = offsets[ii];
+            final int end = offsets[ii + 1];
+            if (_buffer.remaining() < end - start + 1)
+            {
+                drain();
+            }
+            for (int pos = start; pos < end; ++pos)
+            {
+                _buffer.put((byte) arena[pos]);
+            }
+            _buffer.put((byte) '\n');
+        }
+    }
+
+    void flush() throws IOException
+    {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            drain();
+        }
+        finally
+        {
+            wipe();
+            _channel.close();
+        }
+    }
+
+    private void drain() throws IOException
+    {
+        _buffer.flip();
+        while (_buffer.hasRemaining())
+        {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    /**
+     * Overwrites the buffer, which has held every password written.
+     */
+    private void wipe()
+    {
+        _buffer.clear();
+        while (_buffer.remaining() >= Long.BYTES)
+        {
+            _buffer.putLong(0);
+        }
+        while (_buffer.hasRemaining())
+        {
+            _buffer.put((byte) 0);
+        }
+        _buffer.clear();
+    }
+
+    private final WritableByteChannel _channel;
+    private final ByteBuffer _buffer;
+}
@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.cli;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import d_j_phredrix.pwgen.core.Alphabet;
+import d_j_phredrix.pwgen.core.FingerprintSet;
+import d_j_phredrix.pwgen.core.Generator;
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+import d_j_phredrix.pwgen.core.Generator.Mode;
+import d_j_phredrix.pwgen.core.DataModel;
+import d_j_phredrix.pwgen.core.ParallelGenerator;
+import d_j_phredrix.pwgen.core.PasswordPolicy;
+import d_j_phredrix.pwgen.core.Profiles;
+import d_j_phredrix.pwgen.core.RandomSource;
+import d_j_phredrix.pwgen.core.Startup;
+import d_j_phredrix.pwgen.core.Template;
+
+/**
+ * Headless entry point: writes passwords, one per line, to stdout or a file.
+ * Only depends on {@code d_j_phredrix.pwgen.core}, so no AWT or Swing classes
+ * are loaded.
+ *
+ * <pre>
+ * pwgen [--profile name] [-n count] [--min length] [--max length] [--charsets upper,lower,...]
+ *       [--template pattern] [--threads n] [--random source] [--unique | --unique-bloom]
+ *       [-o file [--mapped] [--fixed-width]]
+ * </pre>
+ *
+ * {@code --mapped} writes the file through {@link MappedOutput};
+ * {@code --fixed-width} additionally pads every record to the maximum length
+ * so the Nth password can be found by seeking. {@code --unique} and
+ * {@code --unique-bloom} guarantee that no password repeats within the run,
+ * using a {@link FingerprintSet} table or Bloom filter sized for the count.
+ * {@code --template} generates every password from a {@link Template}
+ * instead of the lengths and character sets. A {@code --max} below the
+ * minimum length is an error; without {@code --max}, a {@code --min} above
+ * the default or profile maximum raises the maximum to match.
+ * {@code --random testdata:seed} makes the output a pure function of the
+ * seed and the other options, whatever {@code --threads}, for test fixtures
+ * and load tests; such output must never be used as real passwords, and a
+ * warning saying so goes to stderr.
+ * {@code --profile} starts from the lengths, character sets and random
+ * source of a profile saved with {@link Profiles}; later options override
+ * them. Profiles this output cannot reproduce faithfully are refused:
+ * passphrase and pronounceable ones, those with per-set minimums, and those
+ * whose custom characters are not ASCII.
+ */
+public class CommandLine {
+
+    public static void main(String[] args)
+    {
+        final CommandLine cl = new CommandLine();
+        try
+        {
+            cl.parse(args);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            System.err.println(ex.getMessage());
+            System.err.println(Messages.getString("CommandLine.usage")); //$NON-NLS-1$
+            System.exit(2);
+        }
+        try
+        {
+            cl.run();
+        }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    void parse(String[] args)
+    {
+        boolean maxGiven = false;
+        for (int ii = 0; ii < args.length; ++ii)
+        {
+            final String arg = args[ii];
+            switch (arg)
+            {
+            case "--profile": //$NON-NLS-1$
+                applyProfile(value(args, ++ii, arg));
+                break;
+            case "-n": //$NON-NLS-1$
+            case "--count": //$NON-NLS-1$
+                _count = parseLong(arg, value(args, ++ii, arg));
+                break;
+            case "--min": //$NON-NLS-1$
+                _minLength = parseInt(arg, value(args, ++ii, arg));
+                break;
+            case "--max": //$NON-NLS-1$
+                _maxLength = parseInt(arg, value(args, ++ii, arg));
+                maxGiven = true;
+                break;
+            case "--charsets": //$NON-NLS-1$
+                _alphabet = parseCharSets(value(args, ++ii, arg));
+                break;
+            case "--template": //$NON-NLS-1$
+                _template = Template.compile(value(args, ++ii, arg));
+                break;
+            case "--threads": //$NON-NLS-1$
+                _threads = parseInt(arg, value(args, ++ii, arg));
+                break;
+            case "--random": //$NON-NLS-1$
+                _randomSource = value(args, ++ii, arg);
+                break;
+            case "--unique": //$NON-NLS-1$
+                _unique = UNIQUE_EXACT;
+                break;
+            case "--unique-bloom": //$NON-NLS-1$
+                _unique = UNIQUE_BLOOM;
+                break;
+            case "-o": //$NON-NLS-1$
+            case "--output": //$NON-NLS-1$
+                _output = value(args, ++ii, arg);
+                break;
+            case "--mapped": //$NON-NLS-1$
+                _mapped = true;
+                break;
+            case "--fixed-width": //$NON-NLS-1$
+                _mapped = true;
+                _fixedWidth = true;
+                break;
+            default:
+                throw new IllegalArgumentException(Messages.getString("CommandLine.unknownOption") + arg); //$NON-NLS-1$
+            }
+        }
+        if (_template != null)
+        {
+            _minLength = _template.getLength();
+            _maxLength = _minLength;
+        }
+        else if (_maxLength < _minLength)
+        {
+            if (maxGiven)
+            {
+                throw new IllegalArgumentException(Messages.getString("CommandLine.minAboveMax")); //$NON-NLS-1$
+            }
+            _maxLength = _minLength;
+        }
+        if (_threads < 1 || _maxLength >= BUFFER_SIZE)
+        {
+            throw new IllegalArgumentException(Messages.getString("CommandLine.valueOutOfRange")); //$NON-NLS-1$
+        }
+        if (_mapped && (_output == null || _output.equals("-"))) //$NON-NLS-1$
+        {
+            throw new IllegalArgumentException(Messages.getString("CommandLine.mappedNeedsFile")); //$NON-NLS-1$
+        }
+        if (_template == null && _alphabet.isEmpty())
+        {
+            throw new IllegalArgumentException(Messages.getString("CommandLine.emptyCharacterSet")); //$NON-NLS-1$
+        }
+        RandomSource.forName(_randomSource);
+    }
+
+    void run() throws IOException
+    {
+        final boolean reproducible = RandomSource.forName(_randomSource).isReproducible();
+        if (reproducible)
+        {
+            System.err.println(Messages.getString("CommandLine.notSecret") + _randomSource); //$NON-NLS-1$
+        }
+        final FingerprintSet unique = _unique == UNIQUE_EXACT ? FingerprintSet.exact(_count)
+                : _unique == UNIQUE_BLOOM ? FingerprintSet.bloom(_count, FingerprintSet.DEFAULT_BLOOM_BITS) : null;
+        if (_mapped)
+        {
+            new MappedOutput(_output, _alphabet, _template, _minLength, _maxLength, _fixedWidth, unique).write(_count,
+                    new ParallelGenerator(ForkJoinPool.commonPool(), _threads, _randomSource));
+            return;
+        }
+        final int chunk = (int) Math.min(_count, Math.max(1, CHUNK_CHARS / Math.max(1, _maxLength)));
+        final char[] arena = new char[chunk * _maxLength];
+        final int[] offsets = new int[chunk + 1];
+        // A reproducible source goes through ParallelGenerator even on one
+        // thread, so that the output does not depend on --threads.
+        final boolean single = _threads == 1 && !reproducible;
+        final Generator gen = single ? new Generator(_randomSource) : null;
+        final ParallelGenerator pgen = single ? null
+                : new ParallelGenerator(ForkJoinPool.commonPool(), _threads, _randomSource);
+
+        try (ChannelOutput out = new ChannelOutput(openOutput(), BUFFER_SIZE))
+        {
+            for (long done = 0; done < _count; done += chunk)
+            {
+                final int n = (int) Math.min(chunk, _count - done);
+                if (_template != null)
+                {
+                    if (gen != null)
+                    {
+                        gen.createPasswords(n, _template, arena, offsets, unique);
+                    }
+                    else
+                    {
+                        pgen.createPasswords(n, _template, arena, offsets, unique);
+                    }
+                }
+                else if (gen != null)
+                {
+                    gen.createPasswords(n, _alphabet, _minLength, _maxLength, arena, offsets, unique);
+                }
+                else
+                {
+                    pgen.createPasswords(n, _alphabet, _minLength, _maxLength, arena, offsets, unique);
+                }
+                out.write(arena, offsets, n);
+                Startup.firstPassword();
+            }
+        }
+        finally
+        {
+            Arrays.fill(arena, '\0');
+        }
+    }
+
+    private void applyProfile(String name)
+    {
+        final DataModel.Snapshot s = Profiles.load().get(name);
+        if (s == null)
+        {
+            throw new IllegalArgumentException(Messages.getString("CommandLine.unknownProfile") + name); //$NON-NLS-1$
+        }
+        if (s.getMode() != Mode.RANDOM && s.getMode() != Mode.TEMPLATE)
+        {
+            // Passphrases and pronounceable passwords have no batch path.
+            throw new IllegalArgumentException(Messages.getString("CommandLine.unsupportedProfileMode") + s.getMode()); //$NON-NLS-1$
+        }
+        final PasswordPolicy policy = s.getPasswordPolicy();
+        if (s.getMode() == Mode.RANDOM)
+        {
+            // The batch path neither enforces minimums nor writes anything
+            // but single bytes.
+            if (policy.isConstrained())
+            {
+                throw new IllegalArgumentException(Messages.getString("CommandLine.profileMinimums") + name); //$NON-NLS-1$
+            }
+            if (!policy.getAlphabet().isAscii())
+            {
+                throw new IllegalArgumentException(Messages.getString("CommandLine.profileNotAscii") + name); //$NON-NLS-1$
+            }
+        }
+        _minLength = s.getMinLength();
+        _maxLength = s.getMaxLength();
+        // Includes the profile's custom characters and exclusions.
+        _alphabet = policy.getAlphabet();
+        _randomSource = s.getRandomSource();
+        _template = s.getMode() == Mode.TEMPLATE ? s.getCompiledTemplate() : null;
+    }
+
+    private WritableByteChannel openOutput() throws IOException
+    {
+        if (_output == null || _output.equals("-")) //$NON-NLS-1$
+        {
+            return new FileOutputStream(FileDescriptor.out).getChannel();
+        }
+        return FileChannel.open(Paths.get(_output), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static String value(String[] args, int index, String option)
+    {
+        if (index >= args.length)
+        {
+            throw new IllegalArgumentException(Messages.getString("CommandLine.missingValue") + option); //$NON-NLS-1$
+        }
+        return args[index];
+    }
+
+    private static int parseInt(String option, String value)
+    {
+        final long result = parseLong(option, value);
+        if (result > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException(Messages.getString("CommandLine.valueOutOfRange")); //$NON-NLS-1$
+        }
+        return (int) result;
+    }
+
+    private static long parseLong(String option, String value)
+    {
+        try
+        {
+            final long result = Long.parseLong(value);
+            if (result < 0)
+            {
+                throw new NumberFormatException();
+            }
+            return result;
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException(Messages.getString("CommandLine.badNumber") + option); //$NON-NLS-1$
+        }
+    }
+
+    static Alphabet parseCharSets(String list)
+    {
+        int mask = 0;
+        for (String name : list.split(",")) //$NON-NLS-1$
+        {
+            try
+            {
+                mask |= Generator.getMask(CharSetType.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            }
+            catch (IllegalArgumentException ex)
+            {
+                throw new IllegalArgumentException(Messages.getString("CommandLine.unknownCharSet") + name); //$NON-NLS-1$
+            }
+        }
+        return Generator.getAlphabet(mask);
+    }
+
+    private long _count = 1;
+    private int _minLength = 8;
+    private int _maxLength = 8;
+    private int _threads = 1;
+    private Alphabet _alphabet = Generator.getAlphabet(CharSetType.UPPER, CharSetType.LOWER, CharSetType.DIGIT);
+    /** Replaces the lengths and character sets if not null. */
+    private Template _template;
+    private String _output;
+    private String _randomSource = RandomSource.CHACHA20;
+    private boolean _mapped;
+    private boolean _fixedWidth;
+    private int _unique = UNIQUE_NONE;
+
+    private static final int UNIQUE_NONE = 0;
+    private static final int UNIQUE_EXACT = 1;
+    private static final int UNIQUE_BLOOM = 2;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int CHUNK_CHARS = 1 << 20;
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.cli;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import d_j_phredrix.pwgen.core.Alphabet;
+import d_j_phredrix.pwgen.core.FingerprintSet;
+import d_j_phredrix.pwgen.core.ParallelGenerator;
+import d_j_phredrix.pwgen.core.Template;
+
+/**
+ * Writes very large batches straight into a memory-mapped file instead of
+ * going through one write call per buffer. The file is sized up front from
+ * the count and maximum length, and mapped in windows of at most
+ * {@value #WINDOW_BYTES} bytes.
+ * <p>
+ * In fixed-width mode every record is {@code maxLength + 1} bytes: the
+ * password, padded with spaces, then a newline. Password {@code n} therefore
+ * starts at byte {@code n * (maxLength + 1)}, and each worker of the
+ * {@link ParallelGenerator} fills its own disjoint range of records without
+ * any coordination. In variable-width mode records are packed; generation is
+ * still parallel but the copy into the mapping is sequential, and the file is
+ * truncated to its final size at the end.
+ */
+class MappedOutput {
+
+    /**
+     * @param template
+     *            Used instead of {@code alphabet} if not null; the lengths
+     *            must then both be its length
+     * @param unique
+     *            Rejects repeated passwords if not null
+     */
+    MappedOutput(String fileName, Alphabet alphabet, Template template, int minLength, int maxLength,
+            boolean fixedWidth, FingerprintSet unique)
+    {
+        _fileName = fileName;
+        _alphabet = alphabet;
+        _template = template;
+        _minLength = minLength;
+        _maxLength = maxLength;
+        _fixedWidth = fixedWidth;
+        _unique = unique;
+    }
+
+    void write(long count, ParallelGenerator pgen) throws IOException
+    {
+        final long recordWidth = _maxLength + 1;
+        try (RandomAccessFile file = new RandomAccessFile(_fileName, "rw"); //$NON-NLS-1$
+                FileChannel channel = file.getChannel())
+        {
+            file.setLength(count * recordWidth);
+            if (_fixedWidth)
+            {
+                writeFixed(channel, count, pgen);
+            }
+            else
+            {
+                file.setLength(writePacked(channel, count, pgen));
+            }
+        }
+    }
+
+    private void writeFixed(FileChannel channel, long count, ParallelGenerator pgen)
+    {
+        final int recordWidth = _maxLength + 1;
+        pgen.forEachSlice(count, (gen, from, to) -> {
+            final int chunk = chunkSize();
+            final char[] arena = new char[chunk * _maxLength];
+            final int[] offsets = new int[chunk + 1];
+            for (long record = from; record < to;)
+            {
+                final int windowRecords = (int) Math.min(to - record, WINDOW_BYTES / recordWidth);
+                final MappedByteBuffer window = channel.map(MapMode.READ_WRITE, record * recordWidth,
+                        (long) windowRecords * recordWidth);
+                for (int done = 0; done < windowRecords;)
+                {
+                    final int n = Math.min(chunk, windowRecords - done);
+                    if (_template != null)
+                    {
+                        gen.createPasswords(n, _template, arena, offsets, _unique);
+                    }
+                    else
+                    {
+                        gen.createPasswords(n, _alphabet, _minLength, _maxLength, arena, offsets, _unique);
+                    }
+                    for (int ii = 0; ii < n; ++ii)
+                    {
+                        int pos = offsets[ii];
+                        for (; pos < offsets[ii + 1]; ++pos)
+                        {
+                            window.put((byte) arena[pos]);
+                        }
+                        for (pos -= offsets[ii]; pos < _maxLength; ++pos)
+                        {
+                            window.put((byte) ' ');
+                        }
+                        window.put((byte) '\n');
+                    }
+                    done += n;
+                }
+                record += windowRecords;
+            }
+            Arrays.fill(arena, '\0');
+        });
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    private long writePacked(FileChannel channel, long count, ParallelGenerator pgen) throws IOException
+    {
+        final int chunk = chunkSize();
+        final char[] arena = new char[chunk * _maxLength];
+        final int[] offsets = new int[chunk + 1];
+        long position = 0;
+        MappedByteBuffer window = null;
+        for (long done = 0; done < count;)
+        {
+            final int n = (int) Math.min(chunk, count - done);
+            final int chars = _template != null ? pgen.createPasswords(n, _template, arena, offsets, _unique)
+                    : pgen.createPasswords(n, _alphabet, _minLength, _maxLength, arena, offsets, _unique);
+            if (window == null || window.remaining() < chars + n)
+            {
+                position += window == null ? 0 : window.position();
+                final long size = Math.min(WINDOW_BYTES, (count - done) * (_maxLength + 1));
+                window = channel.map(MapMode.READ_WRITE, position, size);
+            }
+            for (int ii = 0; ii < n; ++ii)
+            {
+                for (int pos = offsets[ii]; pos < offsets[ii + 1]; ++pos)
+                {
+                    window.put((byte) arena[pos]);
+                }
+                window.put((byte) '\n');
+            }
+            done += n;
+        }
+        Arrays.fill(arena, '\0');
+        return position + (window == null ? 0 : window.position());
+    }
+
+    private int chunkSize()
+    {
+        return Math.max(1, CHUNK_CHARS / Math.max(1, _maxLength));
+    }
+
+    private final String _fileName;
+    private final Alphabet _alphabet;
+    private final Template _template;
+    private final int _minLength;
+    private final int _maxLength;
+    private final boolean _fixedWidth;
+    private final FingerprintSet _unique;
+
+    private static final int WINDOW_BYTES = 1 << 30;
+    private static final int CHUNK_CHARS = 1 << 20;
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable, ready-to-index set of symbols to draw password characters
+ * from. The alphabets for every combination of the built-in
+ * {@link Generator.CharSetType}s are built once and shared; see
+ * {@link Generator#getAlphabet(Generator.CharSetType...)}. User-defined
+ * alphabets are compiled the same way, once, by {@link PasswordPolicy}.
+ * <p>
+ * Symbols are Unicode code points, held in an {@code int[]} table for
+ * drawing and a {@link BitSet} for membership tests, so both cost the same
+ * however the alphabet was put together. An alphabet with supplementary
+ * code points writes two {@code char}s for some symbols; see
+ * {@link #hasSupplementary()}.
+ */
+public final class Alphabet {
+
+    /**
+     * @param symbols
+     * @return an alphabet drawing from the code points of {@code symbols},
+     *         in order; repeated symbols are drawn proportionally more often
+     */
+    public static Alphabet of(String symbols)
+    {
+        return new Alphabet(symbols.codePoints().toArray());
+    }
+
+    /**
+     * @param symbols
+     * @return an alphabet drawing from the code points of {@code symbols},
+     *         each once, in order of first appearance
+     */
+    public static Alphabet distinct(CharSequence symbols)
+    {
+        final BitSet seen = new BitSet();
+        return new Alphabet(symbols.codePoints().filter(cp -> {
+            final boolean first = !seen.get(cp);
+            seen.set(cp);
+            return first;
+        }).toArray());
+    }
+
+    private Alphabet(int[] codePoints)
+    {
+        _codePoints = codePoints;
+        _members = new BitSet();
+        boolean supplementary = false;
+        final StringBuilder sb = new StringBuilder(codePoints.length);
+        for (int cp : codePoints)
+        {
+            _members.set(cp);
+            supplementary |= Character.isSupplementaryCodePoint(cp);
+            sb.appendCodePoint(cp);
+        }
+        _string = sb.toString();
+        _symbols = supplementary ? null : _string.toCharArray();
+    }
+
+    /**
+     * @return the number of symbols, counting repeats
+     */
+    public int size()
+    {
+        return _codePoints.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return _codePoints.length == 0;
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             if the alphabet {@link #hasSupplementary()}; use
+     *             {@link #codePointAt(int)}
+     */
+    public char charAt(int index)
+    {
+        if (_symbols == null)
+        {
+            throw new IllegalStateException(Messages.getString("Alphabet.supplementary")); //$NON-NLS-1$
+        }
+        return _symbols[index];
+    }
+
+    public int codePointAt(int index)
+    {
+        return _codePoints[index];
+    }
+
+    /**
+     * @return true if {@code codePoint} is one of the symbols
+     */
+    public boolean contains(int codePoint)
+    {
+        return codePoint >= 0 && _members.get(codePoint);
+    }
+
+    /**
+     * @return true if every code point of {@code text} is one of the symbols
+     */
+    public boolean containsAll(CharSequence text)
+    {
+        return text.codePoints().allMatch(this::contains);
+    }
+
+    /**
+     * @return true if any symbol lies outside the Basic Multilingual Plane
+     *         and so takes two {@code char}s
+     */
+    public boolean hasSupplementary()
+    {
+        return _symbols == null;
+    }
+
+    /**
+     * @return true if every symbol is 7-bit ASCII, so fits in one byte of
+     *         output
+     */
+    public boolean isAscii()
+    {
+        return _members.length() <= 0x80;
+    }
+
+    /**
+     * @return the symbols of this alphabet, then those of {@code other} not
+     *         already present
+     */
+    public Alphabet plus(Alphabet other)
+    {
+        final int[] result = Arrays.copyOf(_codePoints, _codePoints.length + other._codePoints.length);
+        int n = _codePoints.length;
+        for (int cp : other._codePoints)
+        {
+            if (!_members.get(cp))
+            {
+                result[n++] = cp;
+            }
+        }
+        return n == _codePoints.length ? this : new Alphabet(Arrays.copyOf(result, n));
+    }
+
+    /**
+     * @return the symbols of this alphabet that are not in {@code other}
+     */
+    public Alphabet without(Alphabet other)
+    {
+        final int[] result = new int[_codePoints.length];
+        int n = 0;
+        for (int cp : _codePoints)
+        {
+            if (!other.contains(cp))
+            {
+                result[n++] = cp;
+            }
+        }
+        return n == _codePoints.length ? this : new Alphabet(Arrays.copyOf(result, n));
+    }
+
+    @Override
+    public String toString()
+    {
+        return _string;
+    }
+
+    /**
+     * The backing array, for the generation loops; null if the alphabet
+     * {@link #hasSupplementary()}. Never modified and never handed outside
+     * the package.
+     */
+    char[] symbols()
+    {
+        return _symbols;
+    }
+
+    /**
+     * The code point table. Never modified and never handed outside the
+     * package.
+     */
+    int[] codePoints()
+    {
+        return _codePoints;
+    }
+
+    private final String _string;
+    private final int[] _codePoints;
+    private final char[] _symbols;
+    private final BitSet _members;
+}
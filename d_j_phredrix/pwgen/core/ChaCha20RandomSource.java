@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * {@link RandomSource} producing the ChaCha20 keystream (RFC 8439) under a
+ * random key. Much faster than the JDK {@code SecureRandom} providers for
+ * bulk output, since whole 64-byte blocks are written straight into the
+ * caller's array.
+ * <p>
+ * The 256-bit key and 96-bit nonce come from a {@link SecureRandom}, and are
+ * replaced with fresh ones every {@link #getReseedInterval()} bytes, well
+ * before the 32-bit block counter could wrap. Not thread safe.
+ */
+public class ChaCha20RandomSource implements RandomSource {
+
+    public ChaCha20RandomSource()
+    {
+        this(new SecureRandom(), DEFAULT_RESEED_INTERVAL);
+    }
+
+    /**
+     * @param seeder
+     *            Supplies the key and nonce, initially and on every reseed
+     * @param reseedInterval
+     *            Number of output bytes after which a new key is drawn
+     */
+    public ChaCha20RandomSource(SecureRandom seeder, long reseedInterval)
+    {
+        if (reseedInterval <= 0 || reseedInterval > MAX_RESEED_INTERVAL)
+        {
+            throw new IllegalArgumentException(Messages.getString("ChaCha20RandomSource.badReseedInterval") + reseedInterval); //$NON-NLS-1$
+        }
+        _seeder = seeder;
+        _reseedInterval = reseedInterval;
+        reseed();
+    }
+
+    /**
+     * Keystream for a given key, nonce and initial counter; for checking
+     * against published test vectors.
+     */
+    ChaCha20RandomSource(byte[] key, byte[] nonce, int counter)
+    {
+        _seeder = null;
+        _reseedInterval = MAX_RESEED_INTERVAL;
+        setKey(key, nonce);
+        _state[12] = counter;
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes)
+    {
+        int pos = 0;
+        // Use up what is left of the last block first.
+        while (pos < bytes.length && _blockPos < BLOCK_BYTES)
+        {
+            bytes[pos++] = _block[_blockPos++];
+        }
+        while (bytes.length - pos >= BLOCK_BYTES)
+        {
+            checkReseed();
+            generateBlock(bytes, pos);
+            pos += BLOCK_BYTES;
+        }
+        if (pos < bytes.length)
+        {
+            checkReseed();
+            generateBlock(_block, 0);
+            _blockPos = 0;
+            while (pos < bytes.length)
+            {
+                bytes[pos++] = _block[_blockPos++];
+            }
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return CHACHA20;
+    }
+
+    public long getReseedInterval()
+    {
+        return _reseedInterval;
+    }
+
+    /**
+     * @return the number of times a new key has been drawn, including the
+     *         initial one
+     */
+    public long getReseedCount()
+    {
+        return _reseedCount;
+    }
+
+    private void checkReseed()
+    {
+        if (_blocksSinceReseed >= _reseedInterval / BLOCK_BYTES)
+        {
+            reseed();
+            Metrics.global().reseeded(CHACHA20);
+        }
+    }
+
+    private void reseed()
+    {
+        final byte[] seed = new byte[KEY_BYTES + NONCE_BYTES];
+        _seeder.nextBytes(seed);
+        final byte[] nonce = new byte[NONCE_BYTES];
+        System.arraycopy(seed, KEY_BYTES, nonce, 0, NONCE_BYTES);
+        setKey(seed, nonce);
+        Arrays.fill(seed, (byte) 0);
+        _state[12] = 0;
+        // Anything buffered came from the old key.
+        _blockPos = BLOCK_BYTES;
+        _blocksSinceReseed = 0;
+        ++_reseedCount;
+    }
+
+    private void setKey(byte[] key, byte[] nonce)
+    {
+        _state[0] = 0x61707865;
+        _state[1] = 0x3320646e;
+        _state[2] = 0x79622d32;
+        _state[3] = 0x6b206574;
+        for (int ii = 0; ii < 8; ++ii)
+        {
+            _state[4 + ii] = (int) INT_VIEW.get(key, ii * 4);
+        }
+        for (int ii = 0; ii < 3; ++ii)
+        {
+            _state[13 + ii] = (int) INT_VIEW.get(nonce, ii * 4);
+        }
+    }
+
+    /**
+     * Writes the next keystream block to {@code out[offset .. offset + 64)}
+     * and advances the counter.
+     */
+    private void generateBlock(byte[] out, int offset)
+    {
+        final int[] s = _state;
+        int x0 = s[0], x1 = s[1], x2 = s[2], x3 = s[3];
+        int x4 = s[4], x5 = s[5], x6 = s[6], x7 = s[7];
+        int x8 = s[8], x9 = s[9], x10 = s[10], x11 = s[11];
+        int x12 = s[12], x13 = s[13], x14 = s[14], x15 = s[15];
+        for (int round = 0; round < 10; ++round)
+        {
+            // Column rounds
+            x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 16);
+            x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 12);
+            x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 8);
+            x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 7);
+            x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 16);
+            x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 12);
+            x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 8);
+            x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 7);
+            x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 16);
+            x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 12);
+            x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 8);
+            x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 7);
+            x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 16);
+            x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 12);
+            x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 8);
+            x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 7);
+            // Diagonal rounds
+            x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 16);
+            x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 12);
+            x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 8);
+            x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 7);
+            x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 16);
+            x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 12);
+            x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 8);
+            x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 7);
+            x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 16);
+            x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 12);
+            x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 8);
+            x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 7);
+            x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 16);
+            x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 12);
+            x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 8);
+            x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 7);
+        }
+        INT_VIEW.set(out, offset, x0 + s[0]);
+        INT_VIEW.set(out, offset + 4, x1 + s[1]);
+        INT_VIEW.set(out, offset + 8, x2 + s[2]);
+        INT_VIEW.set(out, offset + 12, x3 + s[3]);
+        INT_VIEW.set(out, offset + 16, x4 + s[4]);
+        INT_VIEW.set(out, offset + 20, x5 + s[5]);
+        INT_VIEW.set(out, offset + 24, x6 + s[6]);
+        INT_VIEW.set(out, offset + 28, x7 + s[7]);
+        INT_VIEW.set(out, offset + 32, x8 + s[8]);
+        INT_VIEW.set(out, offset + 36, x9 + s[9]);
+        INT_VIEW.set(out, offset + 40, x10 + s[10]);
+        INT_VIEW.set(out, offset + 44, x11 + s[11]);
+        INT_VIEW.set(out, offset + 48, x12 + s[12]);
+        INT_VIEW.set(out, offset + 52, x13 + s[13]);
+        INT_VIEW.set(out, offset + 56, x14 + s[14]);
+        INT_VIEW.set(out, offset + 60, x15 + s[15]);
+        ++s[12];
+        ++_blocksSinceReseed;
+    }
+
+    private final SecureRandom _seeder;
+    private final long _reseedInterval;
+    private final int[] _state = new int[16];
+    private final byte[] _block = new byte[BLOCK_BYTES];
+    private int _blockPos = BLOCK_BYTES;
+    private long _blocksSinceReseed;
+    private long _reseedCount;
+
+    private static final int BLOCK_BYTES = 64;
+    private static final int KEY_BYTES = 32;
+    private static final int NONCE_BYTES = 12;
+    private static final long DEFAULT_RESEED_INTERVAL = 1L << 30;
+    /** The block counter is 32 bits wide. */
+    private static final long MAX_RESEED_INTERVAL = (long) BLOCK_BYTES << 32;
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class,
+            ByteOrder.LITTLE_ENDIAN);
+}
@@ -19,18 +19,27 @@ package d_j_phredrix.pwgen.core;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
-import java.util.prefs.BackingStoreException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.prefs.Preferences;
 
 import d_j_phredrix.pwgen.core.Generator.CharSetType;
+import d_j_phredrix.pwgen.core.Generator.Mode;
 
+/**
+ * The user's settings. Safe to read and change from any thread: the
+ * settings live in an immutable {@link Snapshot} that each change replaces
+ * with a compare-and-set, so {@link #snapshot()} gives a consistent view with
+ * a single volatile read. Listeners are notified on the thread that made the
+ * change.
+ */
 public class DataModel {
 
     public interface ChangeListener {
         enum Item {
-            MIN_LENGTH, MAX_LENGTH, CHARACTER_SET
+            MIN_LENGTH, MAX_LENGTH, CHARACTER_SET, MINIMUM_COUNT, RANDOM_SOURCE, MODE, PASSPHRASE, TEMPLATE
         };
 
         void dataChanged(DataModel d, Item whatChanged, Object source);
@@ -38,6 +47,268 @@ public class DataModel {
         void exceptionOccurred(Exception ex, Object source);
     }
 
+    /**
+     * One consistent set of values. Never modified once published; every
+     * change to the model publishes a new snapshot with the next version.
+     */
+    public static final class Snapshot {
+
+        private Snapshot()
+        {
+        }
+
+        /**
+         * @return a number that increases with every change to the model
+         */
+        public long getVersion()
+        {
+            return version;
+        }
+
+        public int getMinLength()
+        {
+            return minLength;
+        }
+
+        public int getMaxLength()
+        {
+            return maxLength;
+        }
+
+        public CharSetType[] getCharSet()
+        {
+            final List<CharSetType> result = new ArrayList<>();
+            for (CharSetType t : CharSetType.values())
+            {
+                if ((charSetMask & (1 << t.ordinal())) != 0)
+                {
+                    result.add(t);
+                }
+            }
+            return result.toArray(new CharSetType[result.size()]);
+        }
+
+        /**
+         * @return see {@link Generator#getMask(CharSetType...)}
+         */
+        public int getCharSetMask()
+        {
+            return charSetMask;
+        }
+
+        public int getMinimum(CharSetType type)
+        {
+            return minimums[type.ordinal()];
+        }
+
+        /**
+         * @return the characters of {@link CharSetType#CUSTOM}
+         */
+        public String getIncluded()
+        {
+            return included;
+        }
+
+        /**
+         * @return characters never to use, whichever set they are in
+         */
+        public String getExcluded()
+        {
+            return excluded;
+        }
+
+        /**
+         * @return the selected character sets compiled with their minimum
+         *         counts and custom and excluded characters; built on first
+         *         use and kept for the life of this snapshot
+         */
+        public PasswordPolicy getPasswordPolicy()
+        {
+            PasswordPolicy result = passwordPolicy;
+            if (result == null)
+            {
+                result = PasswordPolicy.of(charSetMask, minimums, included, excluded);
+                passwordPolicy = result;
+            }
+            return result;
+        }
+
+        public String getRandomSource()
+        {
+            return randomSource;
+        }
+
+        public Mode getMode()
+        {
+            return mode;
+        }
+
+        public String getWordListFile()
+        {
+            return wordListFile;
+        }
+
+        /**
+         * @return the word list passphrases are drawn from, or null if none
+         *         has been chosen; opened on first use and kept for the life
+         *         of this snapshot
+         */
+        public WordList getWordList()
+        {
+            WordList result = wordList;
+            if (result == null && !wordListFile.isEmpty())
+            {
+                result = WordList.open(wordListFile);
+                wordList = result;
+            }
+            return result;
+        }
+
+        /**
+         * @return the passphrase settings, drawing the injected digit from
+         *         the digits that are not excluded; built on first use and
+         *         kept for the life of this snapshot
+         */
+        public PassphraseFormat getPassphraseFormat()
+        {
+            PassphraseFormat result = passphraseFormat;
+            if (result == null)
+            {
+                result = new PassphraseFormat(wordCount, separator, capitalize, injectDigit,
+                        Generator.getAlphabet(CharSetType.DIGIT).without(getPasswordPolicy().excluded()));
+                passphraseFormat = result;
+            }
+            return result;
+        }
+
+        public int getWordCount()
+        {
+            return wordCount;
+        }
+
+        public String getSeparator()
+        {
+            return separator;
+        }
+
+        public boolean isCapitalize()
+        {
+            return capitalize;
+        }
+
+        public boolean isInjectDigit()
+        {
+            return injectDigit;
+        }
+
+        /**
+         * @return the pattern of {@link Mode#TEMPLATE}; see {@link Template}
+         */
+        public String getTemplate()
+        {
+            return template;
+        }
+
+        /**
+         * @return {@link #getTemplate()} compiled without the excluded
+         *         characters; built on first use and kept for the life of
+         *         this snapshot
+         */
+        public Template getCompiledTemplate()
+        {
+            Template result = compiledTemplate;
+            if (result == null)
+            {
+                result = Template.compile(template).without(getPasswordPolicy().excluded());
+                compiledTemplate = result;
+            }
+            return result;
+        }
+
+        /**
+         * @throws IllegalArgumentException
+         *             if the mode cannot keep to the excluded characters,
+         *             such as a template set that they empty
+         */
+        private void checkExclusions()
+        {
+            switch (mode)
+            {
+            case PRONOUNCEABLE:
+                final PasswordPolicy policy = getPasswordPolicy();
+                if (policy.phonemes() == null)
+                {
+                    throw new IllegalArgumentException(Messages.getString("Generator.pronounceableExcluded")); //$NON-NLS-1$
+                }
+                if (policy.pronounceableSymbols().hasSupplementary())
+                {
+                    throw new IllegalArgumentException(Messages.getString("Generator.supplementaryPronounceable")); //$NON-NLS-1$
+                }
+                break;
+            case TEMPLATE:
+                getCompiledTemplate();
+                break;
+            case PASSPHRASE:
+                getPassphraseFormat();
+                break;
+            default:
+                break;
+            }
+        }
+
+        /**
+         * Takes every value but the version from {@code other}.
+         */
+        private void copyFrom(Snapshot other)
+        {
+            minLength = other.minLength;
+            maxLength = other.maxLength;
+            charSetMask = other.charSetMask;
+            minimums = other.minimums.clone();
+            included = other.included;
+            excluded = other.excluded;
+            randomSource = other.randomSource;
+            mode = other.mode;
+            wordListFile = other.wordListFile;
+            wordCount = other.wordCount;
+            separator = other.separator;
+            capitalize = other.capitalize;
+            injectDigit = other.injectDigit;
+            template = other.template;
+        }
+
+        /**
+         * @return an unpublished copy to edit, carrying the next version
+         */
+        private Snapshot next()
+        {
+            final Snapshot result = new Snapshot();
+            result.version = version + 1;
+            result.copyFrom(this);
+            return result;
+        }
+
+        private long version;
+        private int minLength = 8;
+        private int maxLength = 8;
+        private int charSetMask;
+        private int[] minimums = new int[CharSetType.values().length];
+        private String included = ""; //$NON-NLS-1$
+        private String excluded = ""; //$NON-NLS-1$
+        private String randomSource = RandomSource.DEFAULT;
+        private Mode mode = Mode.RANDOM;
+        private String wordListFile = ""; //$NON-NLS-1$
+        private int wordCount = 6;
+        private String separator = "-"; //$NON-NLS-1$
+        private boolean capitalize = false;
+        private boolean injectDigit = false;
+        private String template = "Aaaa-9999-!!"; //$NON-NLS-1$
+        private volatile PasswordPolicy passwordPolicy;
+        private volatile WordList wordList;
+        private volatile PassphraseFormat passphraseFormat;
+        private volatile Template compiledTemplate;
+    }
+
     private DataModel()
     {
     }
@@ -51,62 +322,144 @@ public class DataModel {
     {
         DataModel result = create();
         Persistence p = new Persistence(DataModel.class);
-        Preferences prefs = p.prefs();
-        if (prefs.getLong(Messages.getString("DataModel.version"), -1) == serialVersionUID) //$NON-NLS-1$
+        final Snapshot s = read(p.prefs(), result.snapshot());
+        if (s != null)
         {
-            result.minLength = prefs.getInt(Messages.getString("DataModel.minLength"), 8); //$NON-NLS-1$
-            result.maxLength = prefs.getInt(Messages.getString("DataModel.maxLength"), 8); //$NON-NLS-1$
-            String charSetList = prefs.get(Messages.getString("DataModel.charSets"), ""); //$NON-NLS-1$ //$NON-NLS-2$
-            if (!charSetList.isEmpty())
-            {
-                String[] charSets = charSetList.split(Messages.getString("DataModel.charSetSeparator")); //$NON-NLS-1$
-                for (String charSet : charSets)
-                {
-                    result.charSet.add(CharSetType.valueOf(charSet));
-                }
-            }
+            result._snapshot.set(s);
         }
         return result;
     }
 
+    /**
+     * Queues the current settings to be written by the background writer;
+     * see {@link Persistence#writeBehind(Object, Runnable)}. Cheap enough to
+     * call on every change.
+     */
     public void saveToPrefs()
     {
-        Persistence p = new Persistence(DataModel.class);
-        Preferences prefs = p.prefs();
+        final Snapshot s = snapshot();
+        Persistence.writeBehind(DataModel.class, () -> write(new Persistence(DataModel.class).prefs(), s));
+    }
+
+    /**
+     * @return the current settings, all from the same moment
+     */
+    public Snapshot snapshot()
+    {
+        return _snapshot.get();
+    }
+
+    /**
+     * Switches to {@code settings} in one step, such as a profile from
+     * {@link Profiles}, and notifies listeners of every item.
+     */
+    public void apply(Snapshot settings, Object source)
+    {
+        update(s -> true, s -> s.copyFrom(settings));
+        for (ChangeListener.Item item : ChangeListener.Item.values())
+        {
+            notifyListeners(item, source);
+        }
+    }
+
+    /**
+     * @return the settings stored in {@code prefs}, as a successor of
+     *         {@code base}, or null if there are none or they were written
+     *         by an incompatible version
+     */
+    static Snapshot read(Preferences prefs, Snapshot base)
+    {
+        if (prefs.getLong(Messages.getString("DataModel.version"), -1) != serialVersionUID) //$NON-NLS-1$
+        {
+            return null;
+        }
+        final Snapshot s = base.next();
+        s.minLength = prefs.getInt(Messages.getString("DataModel.minLength"), 8); //$NON-NLS-1$
+        s.maxLength = Math.max(s.minLength, prefs.getInt(Messages.getString("DataModel.maxLength"), 8)); //$NON-NLS-1$
+        s.randomSource = prefs.get(Messages.getString("DataModel.randomSource"), RandomSource.DEFAULT); //$NON-NLS-1$
+        s.mode = Mode.valueOf(prefs.get(Messages.getString("DataModel.mode"), Mode.RANDOM.toString())); //$NON-NLS-1$
+        s.wordListFile = prefs.get(Messages.getString("DataModel.wordList"), ""); //$NON-NLS-1$ //$NON-NLS-2$
+        s.wordCount = prefs.getInt(Messages.getString("DataModel.wordCount"), s.wordCount); //$NON-NLS-1$
+        s.separator = prefs.get(Messages.getString("DataModel.separator"), s.separator); //$NON-NLS-1$
+        s.capitalize = prefs.getBoolean(Messages.getString("DataModel.capitalize"), false); //$NON-NLS-1$
+        s.injectDigit = prefs.getBoolean(Messages.getString("DataModel.injectDigit"), false); //$NON-NLS-1$
+        s.template = prefs.get(Messages.getString("DataModel.template"), s.template); //$NON-NLS-1$
+        s.included = prefs.get(Messages.getString("DataModel.included"), ""); //$NON-NLS-1$ //$NON-NLS-2$
+        s.excluded = prefs.get(Messages.getString("DataModel.excluded"), ""); //$NON-NLS-1$ //$NON-NLS-2$
+        for (CharSetType t : CharSetType.values())
+        {
+            s.minimums[t.ordinal()] = prefs.getInt(Messages.getString("DataModel.minimum") + t, 0); //$NON-NLS-1$
+        }
+        s.charSetMask = 0;
+        String charSetList = prefs.get(Messages.getString("DataModel.charSets"), ""); //$NON-NLS-1$ //$NON-NLS-2$
+        if (!charSetList.isEmpty())
+        {
+            String[] charSets = charSetList.split(Messages.getString("DataModel.charSetSeparator")); //$NON-NLS-1$
+            for (String charSet : charSets)
+            {
+                s.charSetMask |= Generator.getMask(CharSetType.valueOf(charSet));
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Stores {@code s} in {@code prefs} without flushing.
+     */
+    static void write(Preferences prefs, Snapshot s)
+    {
         prefs.putLong(Messages.getString("DataModel.version"), serialVersionUID); //$NON-NLS-1$
-        prefs.putInt(Messages.getString("DataModel.minLength"), minLength); //$NON-NLS-1$
-        prefs.putInt(Messages.getString("DataModel.maxLength"), maxLength); //$NON-NLS-1$
-        CharSetType[] charSets = charSet.toArray(new CharSetType[charSet.size()]);
+        prefs.putInt(Messages.getString("DataModel.minLength"), s.minLength); //$NON-NLS-1$
+        prefs.putInt(Messages.getString("DataModel.maxLength"), s.maxLength); //$NON-NLS-1$
+        prefs.put(Messages.getString("DataModel.randomSource"), s.randomSource); //$NON-NLS-1$
+        prefs.put(Messages.getString("DataModel.mode"), s.mode.toString()); //$NON-NLS-1$
+        prefs.put(Messages.getString("DataModel.wordList"), s.wordListFile); //$NON-NLS-1$
+        prefs.putInt(Messages.getString("DataModel.wordCount"), s.wordCount); //$NON-NLS-1$
+        prefs.put(Messages.getString("DataModel.separator"), s.separator); //$NON-NLS-1$
+        prefs.putBoolean(Messages.getString("DataModel.capitalize"), s.capitalize); //$NON-NLS-1$
+        prefs.putBoolean(Messages.getString("DataModel.injectDigit"), s.injectDigit); //$NON-NLS-1$
+        prefs.put(Messages.getString("DataModel.template"), s.template); //$NON-NLS-1$
+        prefs.put(Messages.getString("DataModel.included"), s.included); //$NON-NLS-1$
+        prefs.put(Messages.getString("DataModel.excluded"), s.excluded); //$NON-NLS-1$
+        for (CharSetType t : CharSetType.values())
+        {
+            prefs.putInt(Messages.getString("DataModel.minimum") + t, s.minimums[t.ordinal()]); //$NON-NLS-1$
+        }
+        CharSetType[] charSets = s.getCharSet();
         List<String> charSetList = new ArrayList<>();
         for (CharSetType c : charSets) {
             charSetList.add(c.toString());
         }
         String[] charSetNames = charSetList.toArray(new String[charSetList.size()]);
         prefs.put(Messages.getString("DataModel.charSets"), String.join(Messages.getString("DataModel.charSetSeparator"), charSetNames)); //$NON-NLS-1$ //$NON-NLS-2$
-        try
-        {
-            prefs.flush();
-        }
-        catch (BackingStoreException e)
-        {
-            e.printStackTrace();
-        }
     }
 
     public int getMinLength()
     {
-        return minLength;
+        return snapshot().minLength;
     }
 
+    /**
+     * Sets the minimum length, raising the maximum to match in the same
+     * snapshot if it was lower.
+     */
     public void setMinLength(int value, Object source)
     {
         try
         {
             checkValue(value);
-            if (value != minLength)
+            final boolean[] raised = new boolean[1];
+            if (update(s -> s.minLength != value, s -> {
+                s.minLength = value;
+                raised[0] = s.maxLength < value;
+                s.maxLength = Math.max(s.maxLength, value);
+            }))
             {
-                minLength = value;
                 notifyListeners(ChangeListener.Item.MIN_LENGTH, source);
+                if (raised[0])
+                {
+                    notifyListeners(ChangeListener.Item.MAX_LENGTH, source);
+                }
             }
         }
         catch (Exception ex)
@@ -117,18 +470,30 @@ public class DataModel {
 
     public int getMaxLength()
     {
-        return maxLength;
+        return snapshot().maxLength;
     }
 
+    /**
+     * Sets the maximum length, lowering the minimum to match in the same
+     * snapshot if it was higher.
+     */
     public void setMaxLength(int value, Object source)
     {
         try
         {
             checkValue(value);
-            if (value != maxLength)
+            final boolean[] lowered = new boolean[1];
+            if (update(s -> s.maxLength != value, s -> {
+                s.maxLength = value;
+                lowered[0] = s.minLength > value;
+                s.minLength = Math.min(s.minLength, value);
+            }))
             {
-                maxLength = value;
                 notifyListeners(ChangeListener.Item.MAX_LENGTH, source);
+                if (lowered[0])
+                {
+                    notifyListeners(ChangeListener.Item.MIN_LENGTH, source);
+                }
             }
         }
         catch (Exception ex)
@@ -139,61 +504,314 @@ public class DataModel {
 
     public CharSetType[] getCharSet()
     {
-        CharSetType[] result = new CharSetType[charSet.size()];
-        result = charSet.toArray(result);
-        return result;
+        return snapshot().getCharSet();
     }
 
     public void setCharSet(CharSetType... value)
     {
-        boolean changed = false;
+        final int mask = Generator.getMask(value);
+        if (update(s -> s.charSetMask != mask, s -> s.charSetMask = mask))
+        {
+            notifyListeners(ChangeListener.Item.CHARACTER_SET, null);
+        }
+    }
 
-        TreeSet<CharSetType> temp = new TreeSet<>();
-        for (CharSetType c : value)
+    public void addCharSet(CharSetType cs)
+    {
+        final int bit = Generator.getMask(cs);
+        if (update(s -> (s.charSetMask & bit) == 0, s -> s.charSetMask |= bit))
         {
-            temp.add(c);
+            notifyListeners(ChangeListener.Item.CHARACTER_SET, null);
         }
+    }
 
-        // Any objects in charSet that aren't in temp?
-        for (Object c : charSet.toArray())
+    public void removeCharSet(CharSetType cs)
+    {
+        final int bit = Generator.getMask(cs);
+        if (update(s -> (s.charSetMask & bit) != 0, s -> s.charSetMask &= ~bit))
         {
-            if (!temp.contains(c))
+            notifyListeners(ChangeListener.Item.CHARACTER_SET, null);
+        }
+    }
+
+    /**
+     * @return the characters of {@link CharSetType#CUSTOM}
+     */
+    public String getIncluded()
+    {
+        return snapshot().included;
+    }
+
+    /**
+     * Sets the characters of {@link CharSetType#CUSTOM}; repeats are
+     * ignored and supplementary characters are allowed.
+     */
+    public void setIncluded(String value, Object source)
+    {
+        try
+        {
+            if (update(s -> !s.included.equals(value), s -> {
+                s.included = value;
+                s.checkExclusions();
+            }))
             {
-                changed = true;
-                break;
+                notifyListeners(ChangeListener.Item.CHARACTER_SET, source);
             }
         }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
+        }
+    }
+
+    /**
+     * @return characters never to use, whichever set they are in
+     */
+    public String getExcluded()
+    {
+        return snapshot().excluded;
+    }
 
-        // Any objects in temp that aren't in charSet?
-        for (Object c : temp.toArray())
+    /**
+     * Sets characters never to use, such as the easily confused
+     * {@code 0O1lI}, in every mode but the words of a passphrase. Refused,
+     * with listeners told why, if the current mode could not keep to them.
+     */
+    public void setExcluded(String value, Object source)
+    {
+        try
         {
-            if (!charSet.contains(c))
+            if (update(s -> !s.excluded.equals(value), s -> {
+                s.excluded = value;
+                s.checkExclusions();
+            }))
             {
-                changed = true;
-                break;
+                notifyListeners(ChangeListener.Item.CHARACTER_SET, source);
             }
         }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
+        }
+    }
 
-        if (changed)
+    /**
+     * @return how many characters of {@code type} every password must
+     *         contain when that set is selected
+     */
+    public int getMinimum(CharSetType type)
+    {
+        return snapshot().getMinimum(type);
+    }
+
+    public void setMinimum(CharSetType type, int value, Object source)
+    {
+        try
         {
-            charSet = temp;
-            notifyListeners(ChangeListener.Item.CHARACTER_SET, null);
+            checkValue(value);
+            if (update(s -> s.minimums[type.ordinal()] != value, s -> s.minimums[type.ordinal()] = value))
+            {
+                notifyListeners(ChangeListener.Item.MINIMUM_COUNT, source);
+            }
+        }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
         }
     }
 
-    public void addCharSet(CharSetType cs)
+    /**
+     * @return the selected character sets together with their minimum
+     *         counts
+     */
+    public PasswordPolicy getPasswordPolicy()
+    {
+        return snapshot().getPasswordPolicy();
+    }
+
+    /**
+     * @return the name of the {@link RandomSource} passwords are drawn from
+     */
+    public String getRandomSource()
+    {
+        return snapshot().randomSource;
+    }
+
+    public void setRandomSource(String value, Object source)
     {
-        if (charSet.add(cs))
+        try
         {
-            notifyListeners(ChangeListener.Item.CHARACTER_SET, null);
+            RandomSource.forName(value);
+            if (update(s -> !value.equals(s.randomSource), s -> s.randomSource = value))
+            {
+                notifyListeners(ChangeListener.Item.RANDOM_SOURCE, source);
+            }
+        }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
         }
     }
 
-    public void removeCharSet(CharSetType cs)
+    public Mode getMode()
     {
-        if (charSet.remove(cs))
+        return snapshot().mode;
+    }
+
+    public void setMode(Mode value, Object source)
+    {
+        try
         {
-            notifyListeners(ChangeListener.Item.CHARACTER_SET, null);
+            if (update(s -> s.mode != value, s -> {
+                s.mode = value;
+                s.checkExclusions();
+            }))
+            {
+                notifyListeners(ChangeListener.Item.MODE, source);
+            }
+        }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
+        }
+    }
+
+    /**
+     * @return the word list passphrases are drawn from, or null if none has
+     *         been chosen
+     */
+    public WordList getWordList()
+    {
+        return snapshot().getWordList();
+    }
+
+    public String getWordListFile()
+    {
+        return snapshot().wordListFile;
+    }
+
+    public void setWordListFile(String value, Object source)
+    {
+        try
+        {
+            if (!value.isEmpty())
+            {
+                WordList.open(value);
+            }
+            if (update(s -> !value.equals(s.wordListFile), s -> s.wordListFile = value))
+            {
+                notifyListeners(ChangeListener.Item.PASSPHRASE, source);
+            }
+        }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
+        }
+    }
+
+    public PassphraseFormat getPassphraseFormat()
+    {
+        return snapshot().getPassphraseFormat();
+    }
+
+    public int getWordCount()
+    {
+        return snapshot().wordCount;
+    }
+
+    public void setWordCount(int value, Object source)
+    {
+        try
+        {
+            if (value < 1)
+            {
+                throw new Exception(Messages.getString("DataModel.positiveValueRequired")); //$NON-NLS-1$
+            }
+            if (update(s -> s.wordCount != value, s -> s.wordCount = value))
+            {
+                notifyListeners(ChangeListener.Item.PASSPHRASE, source);
+            }
+        }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
+        }
+    }
+
+    public String getSeparator()
+    {
+        return snapshot().separator;
+    }
+
+    public void setSeparator(String value, Object source)
+    {
+        if (update(s -> !value.equals(s.separator), s -> s.separator = value))
+        {
+            notifyListeners(ChangeListener.Item.PASSPHRASE, source);
+        }
+    }
+
+    public boolean isCapitalize()
+    {
+        return snapshot().capitalize;
+    }
+
+    public void setCapitalize(boolean value, Object source)
+    {
+        if (update(s -> s.capitalize != value, s -> s.capitalize = value))
+        {
+            notifyListeners(ChangeListener.Item.PASSPHRASE, source);
+        }
+    }
+
+    public boolean isInjectDigit()
+    {
+        return snapshot().injectDigit;
+    }
+
+    public void setInjectDigit(boolean value, Object source)
+    {
+        try
+        {
+            if (update(s -> s.injectDigit != value, s -> {
+                s.injectDigit = value;
+                s.checkExclusions();
+            }))
+            {
+                notifyListeners(ChangeListener.Item.PASSPHRASE, source);
+            }
+        }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
+        }
+    }
+
+    public String getTemplate()
+    {
+        return snapshot().template;
+    }
+
+    /**
+     * Takes {@code value} only if it compiles; otherwise listeners are told
+     * why.
+     */
+    public void setTemplate(String value, Object source)
+    {
+        try
+        {
+            Template.compile(value);
+            if (update(s -> !value.equals(s.template), s -> {
+                s.template = value;
+                s.checkExclusions();
+            }))
+            {
+                notifyListeners(ChangeListener.Item.TEMPLATE, source);
+            }
+        }
+        catch (Exception ex)
+        {
+            notifyException(ex, source);
         }
     }
 
@@ -204,19 +822,43 @@ public class DataModel {
 
     public ChangeListener removeListener(ChangeListener l)
     {
-        ChangeListener result = null;
-        final int index = _listeners.indexOf(l);
-        if (index >= 0)
+        return _listeners.remove(l) ? l : null;
+    }
+
+    /**
+     * Publishes an edited copy of the current snapshot, retrying if another
+     * thread got there first.
+     *
+     * @param changes
+     *            Whether the edit would change anything, given the current
+     *            snapshot
+     * @param edit
+     *            Applied to an unpublished copy
+     * @return false if there was nothing to change
+     */
+    private boolean update(Predicate<Snapshot> changes, Consumer<Snapshot> edit)
+    {
+        for (;;)
         {
-            result = _listeners.get(index);
-            _listeners.remove(index);
+            final Snapshot current = _snapshot.get();
+            if (!changes.test(current))
+            {
+                return false;
+            }
+            final Snapshot next = current.next();
+            edit.accept(next);
+            if (_snapshot.compareAndSet(current, next))
+            {
+                return true;
+            }
         }
-        return result;
     }
 
     private void notifyListeners(ChangeListener.Item what, Object source)
     {
+        final long started = System.nanoTime();
         _listeners.forEach(l -> l.dataChanged(this, what, source));
+        Metrics.global().modelChanged(what, System.nanoTime() - started);
     }
 
     private void notifyException(Exception ex, Object source)
@@ -232,10 +874,8 @@ public class DataModel {
         }
     }
 
-    private int minLength = 8;
-    private int maxLength = 8;
-    private Set<CharSetType> charSet = new TreeSet<>();
-    private List<ChangeListener> _listeners = new ArrayList<>();
+    private final AtomicReference<Snapshot> _snapshot = new AtomicReference<>(new Snapshot());
+    private final List<ChangeListener> _listeners = new CopyOnWriteArrayList<>();
     
     private static final long serialVersionUID = -3967729926712058588L;
-}
\ No newline at end of file
+}
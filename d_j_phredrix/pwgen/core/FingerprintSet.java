@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers which passwords a run has already produced, outside the Java
+ * heap, so bulk generation can reject repeats. Passwords are reduced to
+ * keyed 64-bit fingerprints; equal passwords always have equal fingerprints,
+ * so a repeat is never let through. Different passwords can share a
+ * fingerprint, in which case the newer one is rejected and regenerated.
+ * <p>
+ * Two layouts are available:
+ * <ul>
+ * <li>{@link #exact(long)} stores every fingerprint in an open-addressing
+ * table kept at most half full, rounded up to a power of two: 16 to 32 MB
+ * per million expected passwords. A unique password is rejected only on a
+ * fingerprint collision; over a run of 100 million the chance of even one
+ * is about 1 in 4,000.
+ * <li>{@link #bloom(long, int)} keeps only a Bloom filter, with all bits for
+ * one fingerprint in a single 64-bit word: 2 MB per million at the default
+ * 16 bits per entry. Unique passwords are rejected at a rate that grows to
+ * about 1 in 250 once the expected number has been reached.
+ * </ul>
+ * Memory comes from direct buffers of up to 1 GiB each, so the JVM needs
+ * {@code -XX:MaxDirectMemorySize} at least this large.
+ * <p>
+ * Thread safe and lock free: each insertion is a single compare-and-set on
+ * one word.
+ */
+public final class FingerprintSet {
+
+    /**
+     * @param expected
+     *            Number of passwords the run will produce; inserting many
+     *            more fails
+     */
+    public static FingerprintSet exact(long expected)
+    {
+        return new FingerprintSet(Math.max(2 * expected, MIN_WORDS), false);
+    }
+
+    /**
+     * @param expected
+     *            Number of passwords the run will produce; more fit, but
+     *            raise the share of rejected unique passwords
+     * @param bitsPerEntry
+     *            Filter bits per expected password; see
+     *            {@link #DEFAULT_BLOOM_BITS}
+     */
+    public static FingerprintSet bloom(long expected, int bitsPerEntry)
+    {
+        if (bitsPerEntry < 1)
+        {
+            throw new IllegalArgumentException(Messages.getString("FingerprintSet.badBloomBits") + bitsPerEntry); //$NON-NLS-1$
+        }
+        return new FingerprintSet(Math.max(expected * bitsPerEntry / Long.SIZE, MIN_WORDS), true);
+    }
+
+    private FingerprintSet(long minWords, boolean bloom)
+    {
+        final long words = Long.highestOneBit(minWords - 1) << 1;
+        _mask = words - 1;
+        _bloom = bloom;
+        final int segmentWords = (int) Math.min(words, SEGMENT_WORDS);
+        _segments = new ByteBuffer[(int) (words / segmentWords)];
+        for (int ii = 0; ii < _segments.length; ++ii)
+        {
+            _segments[ii] = ByteBuffer.allocateDirect(segmentWords * Long.BYTES).order(ByteOrder.nativeOrder());
+        }
+        _seed = new SecureRandom().nextLong();
+    }
+
+    /**
+     * Records the password {@code chars[from .. to)}.
+     *
+     * @return true if it was not seen before; false if it must be
+     *         regenerated
+     */
+    public boolean add(char[] chars, int from, int to)
+    {
+        final long fp = fingerprint(chars, from, to);
+        final boolean added = _bloom ? addToFilter(fp) : addToTable(fp);
+        if (added)
+        {
+            _size.increment();
+        }
+        return added;
+    }
+
+    /**
+     * @return the number of passwords accepted so far
+     */
+    public long size()
+    {
+        return _size.sum();
+    }
+
+    /**
+     * @return the number of bytes of direct memory held
+     */
+    public long getMemoryUsed()
+    {
+        return (_mask + 1) * Long.BYTES;
+    }
+
+    private boolean addToTable(long fp)
+    {
+        // Zero marks an empty slot.
+        final long key = fp == 0 ? 1 : fp;
+        long slot = key;
+        for (long probes = 0; probes <= _mask; ++probes, ++slot)
+        {
+            final ByteBuffer segment = _segments[(int) ((slot & _mask) >>> SEGMENT_SHIFT)];
+            final int index = (int) (slot & (SEGMENT_WORDS - 1) & _mask) * Long.BYTES;
+            long current = (long) WORDS.getVolatile(segment, index);
+            if (current == 0)
+            {
+                current = (long) WORDS.compareAndExchange(segment, index, 0L, key);
+                if (current == 0)
+                {
+                    return true;
+                }
+            }
+            if (current == key)
+            {
+                return false;
+            }
+        }
+        throw new IllegalArgumentException(Messages.getString("FingerprintSet.full")); //$NON-NLS-1$
+    }
+
+    private boolean addToFilter(long fp)
+    {
+        // Low bits pick the word; six-bit groups of a remixed copy pick the
+        // bits within it.
+        final ByteBuffer segment = _segments[(int) ((fp & _mask) >>> SEGMENT_SHIFT)];
+        final int index = (int) (fp & (SEGMENT_WORDS - 1) & _mask) * Long.BYTES;
+        final long positions = fp * 0x9E3779B97F4A7C15L;
+        long bits = 0;
+        for (int ii = 0; ii < BLOOM_HASHES; ++ii)
+        {
+            bits |= 1L << ((positions >>> (Long.SIZE - 6 * (ii + 1))) & (Long.SIZE - 1));
+        }
+        final long before = (long) WORDS.getAndBitwiseOr(segment, index, bits);
+        return (before & bits) != bits;
+    }
+
+    private long fingerprint(char[] chars, int from, int to)
+    {
+        long h = _seed ^ (to - from) * 0x9E3779B97F4A7C15L;
+        for (int ii = from; ii < to; ++ii)
+        {
+            h = (h ^ chars[ii]) * 0x100000001B3L;
+        }
+        // MurmurHash3 finalizer, so every input bit affects every output bit.
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private final ByteBuffer[] _segments;
+    private final long _mask;
+    private final boolean _bloom;
+    private final long _seed;
+    private final LongAdder _size = new LongAdder();
+
+    /** Bloom filter bits per expected entry used by the command line. */
+    public static final int DEFAULT_BLOOM_BITS = 16;
+    private static final int BLOOM_HASHES = 6;
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_WORDS = 1L << SEGMENT_SHIFT;
+    private static final long MIN_WORDS = 64;
+    private static final VarHandle WORDS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+}
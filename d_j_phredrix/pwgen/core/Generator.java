@@ -17,9 +17,9 @@
 
 package d_j_phredrix.pwgen.core;
 
+import java.nio.CharBuffer;
 import java.security.SecureRandom;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Generator {
 
@@ -28,16 +28,61 @@ public class Generator {
         LOWER,
         DIGIT,
         PUNCTUATION,
-        SPECIAL
+        SPECIAL,
+        /**
+         * Characters the user chooses; see
+         * {@link PasswordPolicy#of(int, int[], String, String)}. Has no
+         * symbols of its own in {@link Generator#getAlphabet(int)}.
+         */
+        CUSTOM
+    }
+
+    /**
+     * What {@link #createSecret(DataModel)} makes: a string of random
+     * characters from the selected {@link CharSetType}s, a passphrase of
+     * random words, a pronounceable password, or a password following a
+     * {@link Template}.
+     */
+    public enum Mode {
+        RANDOM,
+        PASSPHRASE,
+        PRONOUNCEABLE,
+        TEMPLATE
     }
 
     public Generator()
     {
-        _charSets.put(CharSetType.UPPER, UPPER);
-        _charSets.put(CharSetType.LOWER, LOWER);
-        _charSets.put(CharSetType.DIGIT, DIGIT);
-        _charSets.put(CharSetType.PUNCTUATION, PUNCTUATION);
-        _charSets.put(CharSetType.SPECIAL, SPECIAL);
+        this(_sharedRng);
+    }
+
+    /**
+     * Creates a generator that draws from {@code rng} rather than the shared
+     * process-wide instance. Used to give each worker thread its own
+     * independently seeded source. A generator is not thread safe, whichever
+     * constructor is used.
+     *
+     * @param rng
+     */
+    public Generator(SecureRandom rng)
+    {
+        this(new SecureRandomSource(rng));
+    }
+
+    /**
+     * @param randomSource
+     *            Name of the source to draw from, see
+     *            {@link RandomSource#forName(String)}
+     */
+    public Generator(String randomSource)
+    {
+        this(RandomSource.forName(randomSource));
+    }
+
+    public Generator(RandomSource rng)
+    {
+        _randomSource = rng.getName();
+        _indices = new RandomIndexSource(rng);
+        _metrics = Metrics.global().newRecorder(this);
     }
 
     /**
@@ -48,33 +93,921 @@ public class Generator {
      */
     public String createPassword(String characterSet, int minLength, int maxLength)
     {
-        if (characterSet.isEmpty())
+        return createPassword(Alphabet.of(characterSet), minLength, maxLength);
+    }
+
+    /**
+     * @param alphabet
+     * @param minLength
+     * @param maxLength
+     * @return
+     */
+    public String createPassword(Alphabet alphabet, int minLength, int maxLength)
+    {
+        final char[] buffer = new char[getMaxChars(alphabet, maxLength)];
+        final int length = createPassword(alphabet, minLength, maxLength, buffer, 0);
+        final String result = new String(buffer, 0, length);
+        Arrays.fill(buffer, 0, length, '\0');
+        return result;
+    }
+
+    /**
+     * Writes a password into a caller-owned buffer, which needs room for
+     * {@link #getMaxChars(Alphabet, int)} characters from {@code offset}.
+     * Nothing is allocated, and the caller decides when to wipe the result.
+     * Lengths count symbols, which for an alphabet with supplementary
+     * characters may take two {@code char}s each.
+     *
+     * @return the number of {@code char}s written
+     */
+    public int createPassword(Alphabet alphabet, int minLength, int maxLength, char[] dest, int offset)
+    {
+        checkAlphabet(alphabet);
+        if (dest.length - offset < getMaxChars(alphabet, maxLength))
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.batchTooSmall")); //$NON-NLS-1$
+        }
+        final long started = _metrics.start();
+        final int length = getRandomInt(minLength, 1 + maxLength);
+        final char[] symbols = alphabet.symbols();
+        int end = offset;
+        if (symbols != null)
+        {
+            for (end = offset; end < offset + length; ++end)
+            {
+                dest[end] = symbols[getRandomInt(0, symbols.length)];
+            }
+        }
+        else
+        {
+            final int[] codePoints = alphabet.codePoints();
+            for (int ii = 0; ii < length; ++ii)
+            {
+                end += Character.toChars(codePoints[getRandomInt(0, codePoints.length)], dest, end);
+            }
+        }
+        _metrics.generated(started, 1, end - offset);
+        return end - offset;
+    }
+
+    /**
+     * @return a new password in a {@link SecretBuffer}, which the caller must
+     *         close
+     */
+    public SecretBuffer createSecret(Alphabet alphabet, int minLength, int maxLength)
+    {
+        final SecretBuffer result = new SecretBuffer(getMaxChars(alphabet, maxLength));
+        result.setLength(createPassword(alphabet, minLength, maxLength, result.chars(), 0));
+        return result;
+    }
+
+    /**
+     * Writes a password that meets {@code policy} into a caller-owned buffer
+     * with room for {@link #getMaxChars(Alphabet, int)} characters of
+     * {@link PasswordPolicy#getAlphabet()} from {@code offset}. The
+     * length is drawn from {@code [minLength, maxLength]}, raised to
+     * {@link PasswordPolicy#getMinLength()} if that is longer, and every
+     * compliant password of that length is equally likely.
+     *
+     * @return the length of the password
+     */
+    public int createPassword(PasswordPolicy policy, int minLength, int maxLength, char[] dest, int offset)
+    {
+        if (!policy.isSatisfiable())
         {
             throw new IllegalArgumentException(Messages.getString("Generator.emptyCharacterSet")); //$NON-NLS-1$
         }
-        StringBuilder result = new StringBuilder();
-        int length = getRandomInt(minLength, 1 + maxLength);
-        for (int ii = 0; ii < length; ++ii)
+        if (!policy.isConstrained())
+        {
+            return createPassword(policy.getAlphabet(), minLength, maxLength, dest, offset);
+        }
+        if (policy.getMinLength() > maxLength)
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.policyTooLong")); //$NON-NLS-1$
+        }
+        if (dest.length - offset < getMaxChars(policy.getAlphabet(), maxLength))
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.batchTooSmall")); //$NON-NLS-1$
+        }
+        final long started = _metrics.start();
+        final int length = getRandomInt(Math.max(minLength, policy.getMinLength()), 1 + maxLength);
+        policy.drawCounts(_indices, length, _classCounts);
+        if (policy.getAlphabet().hasSupplementary())
+        {
+            final int written = createSupplementary(policy, length, dest, offset);
+            _metrics.generated(started, 1, written);
+            return written;
+        }
+        int pos = offset;
+        for (int ii = 0; ii < policy.classCount(); ++ii)
+        {
+            final char[] symbols = policy.classAlphabet(ii).symbols();
+            for (int jj = 0; jj < _classCounts[ii]; ++jj)
+            {
+                dest[pos++] = symbols[getRandomInt(0, symbols.length)];
+            }
+        }
+        // Fisher-Yates, so each arrangement of the drawn characters is
+        // equally likely.
+        for (int ii = length - 1; ii > 0; --ii)
+        {
+            final int jj = getRandomInt(0, ii + 1);
+            final char c = dest[offset + ii];
+            dest[offset + ii] = dest[offset + jj];
+            dest[offset + jj] = c;
+        }
+        _metrics.generated(started, 1, length);
+        return length;
+    }
+
+    /**
+     * @return a new password meeting {@code policy}, which the caller must
+     *         close; see
+     *         {@link #createPassword(PasswordPolicy, int, int, char[], int)}
+     */
+    public SecretBuffer createSecret(PasswordPolicy policy, int minLength, int maxLength)
+    {
+        final SecretBuffer result = new SecretBuffer(getMaxChars(policy.getAlphabet(), maxLength));
+        result.setLength(createPassword(policy, minLength, maxLength, result.chars(), 0));
+        return result;
+    }
+
+    /**
+     * Writes a password following {@code template} into a caller-owned
+     * buffer with room for {@link Template#getLength()} characters from
+     * {@code offset}. Nothing is allocated and the pattern is not looked at
+     * again: each instruction draws its repeat count of characters from its
+     * table, a byte at a time as batches do, or copies its literal.
+     *
+     * @return the length of the password
+     */
+    public int createPassword(Template template, char[] dest, int offset)
+    {
+        if (dest.length - offset < template.getLength())
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.batchTooSmall")); //$NON-NLS-1$
+        }
+        final long started = _metrics.start();
+        mapper().fill(template, dest, offset, 1, _indices);
+        _metrics.generated(started, 1, template.getLength());
+        return template.getLength();
+    }
+
+    /**
+     * @return a new password following {@code template}, which the caller
+     *         must close
+     */
+    public SecretBuffer createSecret(Template template)
+    {
+        final SecretBuffer result = new SecretBuffer(template.getLength());
+        result.setLength(createPassword(template, result.chars(), 0));
+        return result;
+    }
+
+    /**
+     * Creates whatever the model is currently configured for.
+     *
+     * @return a new password or passphrase, which the caller must close
+     */
+    public SecretBuffer createSecret(DataModel data)
+    {
+        return createSecret(data.snapshot());
+    }
+
+    /**
+     * Creates whatever {@code settings} describe.
+     *
+     * @return a new password or passphrase, which the caller must close
+     */
+    public SecretBuffer createSecret(DataModel.Snapshot settings)
+    {
+        switch (settings.getMode())
+        {
+        case PASSPHRASE:
+            return createPassphrase(settings.getWordList(), settings.getPassphraseFormat());
+        case PRONOUNCEABLE:
+            return createPronounceable(settings.getPasswordPolicy(), settings.getMinLength(), settings.getMaxLength());
+        case TEMPLATE:
+            return createSecret(settings.getCompiledTemplate());
+        case RANDOM:
+        default:
+            return createSecret(settings.getPasswordPolicy(), settings.getMinLength(), settings.getMaxLength());
+        }
+    }
+
+    /**
+     * Writes whatever {@code settings} describe into a caller-owned buffer
+     * with room for {@link #getMaxLength(DataModel.Snapshot)} characters from
+     * {@code offset}.
+     *
+     * @return the length written
+     */
+    public int createPassword(DataModel.Snapshot settings, char[] dest, int offset)
+    {
+        switch (settings.getMode())
+        {
+        case PASSPHRASE:
+            final WordList words = settings.getWordList();
+            if (words == null)
+            {
+                throw new IllegalArgumentException(Messages.getString("Generator.noWordList")); //$NON-NLS-1$
+            }
+            return createPassphrase(words, settings.getPassphraseFormat(), dest, offset);
+        case PRONOUNCEABLE:
+            return createPronounceable(settings.getPasswordPolicy(), settings.getMinLength(), settings.getMaxLength(),
+                    dest, offset);
+        case TEMPLATE:
+            return createPassword(settings.getCompiledTemplate(), dest, offset);
+        case RANDOM:
+        default:
+            return createPassword(settings.getPasswordPolicy(), settings.getMinLength(), settings.getMaxLength(),
+                    dest, offset);
+        }
+    }
+
+    /**
+     * @return the most characters {@link #createPassword(DataModel.Snapshot,
+     *         char[], int)} can write for {@code settings}
+     */
+    public static int getMaxLength(DataModel.Snapshot settings)
+    {
+        if (settings.getMode() == Mode.PASSPHRASE)
+        {
+            final WordList words = settings.getWordList();
+            if (words == null)
+            {
+                throw new IllegalArgumentException(Messages.getString("Generator.noWordList")); //$NON-NLS-1$
+            }
+            return settings.getPassphraseFormat().getMaxLength(words);
+        }
+        if (settings.getMode() == Mode.PRONOUNCEABLE)
+        {
+            return settings.getMaxLength();
+        }
+        if (settings.getMode() == Mode.TEMPLATE)
+        {
+            return settings.getCompiledTemplate().getLength();
+        }
+        return getMaxChars(settings.getPasswordPolicy().getAlphabet(), settings.getMaxLength());
+    }
+
+    /**
+     * @return the most {@code char}s a password of {@code maxLength} symbols
+     *         from {@code alphabet} can take
+     */
+    public static int getMaxChars(Alphabet alphabet, int maxLength)
+    {
+        return alphabet.hasSupplementary() ? 2 * maxLength : maxLength;
+    }
+
+    /**
+     * @param words
+     *            Required; see {@link DataModel#getWordList()}
+     * @param format
+     * @return a new passphrase, which the caller must close
+     */
+    public SecretBuffer createPassphrase(WordList words, PassphraseFormat format)
+    {
+        if (words == null)
         {
-            result.append(getRandomChar(characterSet));
+            throw new IllegalArgumentException(Messages.getString("Generator.noWordList")); //$NON-NLS-1$
         }
-        return result.toString();
+        final SecretBuffer result = new SecretBuffer(format.getMaxLength(words));
+        result.setLength(createPassphrase(words, format, result.chars(), 0));
+        return result;
+    }
+
+    /**
+     * Writes a passphrase into a caller-owned buffer, which needs room for
+     * {@link PassphraseFormat#getMaxLength(WordList)} characters from
+     * {@code offset}.
+     *
+     * @return the length of the passphrase
+     */
+    public int createPassphrase(WordList words, PassphraseFormat format, char[] dest, int offset)
+    {
+        if (dest.length - offset < format.getMaxLength(words))
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.batchTooSmall")); //$NON-NLS-1$
+        }
+        final long started = _metrics.start();
+        final String separator = format.getSeparator();
+        final int wordCount = format.getWordCount();
+        final int digitWord = format.isInjectDigit() ? getRandomInt(0, wordCount) : -1;
+        final char[] digits = format.digits();
+        int pos = offset;
+        for (int ii = 0; ii < wordCount; ++ii)
+        {
+            if (ii > 0)
+            {
+                separator.getChars(0, separator.length(), dest, pos);
+                pos += separator.length();
+            }
+            final int start = pos;
+            pos += words.getWord(getRandomInt(0, words.size()), dest, pos);
+            if (format.isCapitalize() && pos > start)
+            {
+                dest[start] = Character.toUpperCase(dest[start]);
+            }
+            if (ii == digitWord)
+            {
+                dest[pos++] = digits[getRandomInt(0, digits.length)];
+            }
+        }
+        _metrics.generated(started, 1, pos - offset);
+        return pos - offset;
+    }
+
+    /**
+     * @return a new pronounceable password, which the caller must close; see
+     *         {@link #createPronounceable(int, int, int, char[], int)}
+     */
+    public SecretBuffer createPronounceable(int charSetMask, int minLength, int maxLength)
+    {
+        final SecretBuffer result = new SecretBuffer(maxLength);
+        result.setLength(createPronounceable(charSetMask, minLength, maxLength, result.chars(), 0));
+        return result;
+    }
+
+    /**
+     * Writes a pronounceable password, built from alternating consonant and
+     * vowel sounds as in the Unix pwgen, into a caller-owned buffer with room
+     * for {@code maxLength} characters from {@code offset}.
+     * <p>
+     * Letters are lower case. If {@code charSetMask} includes
+     * {@link CharSetType#UPPER}, {@link CharSetType#DIGIT}, or
+     * {@link CharSetType#PUNCTUATION} / {@link CharSetType#SPECIAL}, upper
+     * case letters, digits and symbols are mixed in, and the password is
+     * remade until each of them appears. Passwords too short to hold them
+     * all are returned after a bounded number of attempts.
+     *
+     * @return the length of the password
+     */
+    public int createPronounceable(int charSetMask, int minLength, int maxLength, char[] dest, int offset)
+    {
+        return pronounceable(Phonemes.ALL, (charSetMask & UPPER_MASK) != 0 ? ALPHABETS[UPPER_MASK] : null,
+                (charSetMask & DIGIT_MASK) != 0 ? ALPHABETS[DIGIT_MASK].symbols() : NO_CHARS,
+                ALPHABETS[charSetMask & SYMBOL_MASK].symbols(), minLength, maxLength, dest, offset);
+    }
+
+    /**
+     * @return a new pronounceable password, which the caller must close; see
+     *         {@link #createPronounceable(PasswordPolicy, int, int, char[], int)}
+     */
+    public SecretBuffer createPronounceable(PasswordPolicy policy, int minLength, int maxLength)
+    {
+        final SecretBuffer result = new SecretBuffer(maxLength);
+        result.setLength(createPronounceable(policy, minLength, maxLength, result.chars(), 0));
+        return result;
+    }
+
+    /**
+     * As {@link #createPronounceable(int, int, int, char[], int)} for the
+     * sets selected in {@code policy}, honouring its exclusions in the
+     * letters as well as in the digits and symbols. Its
+     * {@link CharSetType#CUSTOM} characters are mixed in with the symbols.
+     * Minimum counts do not apply.
+     *
+     * @return the length of the password
+     * @throws IllegalArgumentException
+     *             if the exclusions leave too few sounds to build a password,
+     *             or a custom character lies outside the Basic Multilingual
+     *             Plane
+     */
+    public int createPronounceable(PasswordPolicy policy, int minLength, int maxLength, char[] dest, int offset)
+    {
+        final int[][] phonemes = policy.phonemes();
+        if (phonemes == null)
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.pronounceableExcluded")); //$NON-NLS-1$
+        }
+        final Alphabet symbols = policy.pronounceableSymbols();
+        if (symbols.hasSupplementary())
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.supplementaryPronounceable")); //$NON-NLS-1$
+        }
+        final Alphabet digits = policy.classOf(CharSetType.DIGIT);
+        return pronounceable(phonemes, policy.classOf(CharSetType.UPPER), digits != null ? digits.symbols() : NO_CHARS,
+                symbols.symbols(), minLength, maxLength, dest, offset);
+    }
+
+    /**
+     * @param phonemes
+     *            See {@link Phonemes#candidatesWithout(Alphabet)}
+     * @param uppers
+     *            The upper case letters a letter may be capitalized to, or
+     *            null for none
+     */
+    private int pronounceable(int[][] phonemes, Alphabet uppers, char[] digits, char[] symbols, int minLength,
+            int maxLength, char[] dest, int offset)
+    {
+        if (dest.length - offset < maxLength)
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.batchTooSmall")); //$NON-NLS-1$
+        }
+        final long started = _metrics.start();
+        final int length = getRandomInt(minLength, 1 + maxLength);
+        final int required = (uppers != null && !uppers.isEmpty() ? 1 : 0) | (digits.length > 0 ? 2 : 0)
+                | (symbols.length > 0 ? 4 : 0);
+        for (int attempt = 0;; ++attempt)
+        {
+            int missing = required;
+            int pos = offset;
+            final int end = offset + length;
+            int shouldBe = getRandomInt(0, 2) == 0 ? Phonemes.VOWEL : Phonemes.CONSONANT;
+            boolean first = true;
+            int prevFlags = 0;
+            while (pos < end)
+            {
+                final int[] candidates = Phonemes.candidates(phonemes, shouldBe, first,
+                        (prevFlags & Phonemes.VOWEL) != 0, end - pos == 1);
+                final int element = candidates[getRandomInt(0, candidates.length)];
+                final int flags = Phonemes.FLAGS[element];
+                final int start = Phonemes.START[element];
+                final int elementLength = Phonemes.LENGTH[element];
+                for (int ii = 0; ii < elementLength; ++ii)
+                {
+                    dest[pos + ii] = Phonemes.CHARS[start + ii];
+                }
+                if (uppers != null && (first || (flags & Phonemes.CONSONANT) != 0) && getRandomInt(0, 10) < 2)
+                {
+                    final char upper = Character.toUpperCase(dest[pos]);
+                    if (uppers.contains(upper))
+                    {
+                        dest[pos] = upper;
+                        missing &= ~1;
+                    }
+                }
+                pos += elementLength;
+                if (pos >= end)
+                {
+                    break;
+                }
+                // A digit or symbol ends the current group of sounds.
+                if (digits.length > 0 && !first && getRandomInt(0, 10) < 3)
+                {
+                    dest[pos++] = digits[getRandomInt(0, digits.length)];
+                    missing &= ~2;
+                }
+                else if (symbols.length > 0 && !first && getRandomInt(0, 10) < 2)
+                {
+                    dest[pos++] = symbols[getRandomInt(0, symbols.length)];
+                    missing &= ~4;
+                }
+                else
+                {
+                    if (shouldBe == Phonemes.CONSONANT)
+                    {
+                        shouldBe = Phonemes.VOWEL;
+                    }
+                    else if ((prevFlags & Phonemes.VOWEL) != 0 || (flags & Phonemes.DIPHTHONG) != 0
+                            || getRandomInt(0, 10) > 3)
+                    {
+                        shouldBe = Phonemes.CONSONANT;
+                    }
+                    else
+                    {
+                        shouldBe = Phonemes.VOWEL;
+                    }
+                    prevFlags = flags;
+                    first = false;
+                    continue;
+                }
+                first = true;
+                prevFlags = 0;
+                shouldBe = getRandomInt(0, 2) == 0 ? Phonemes.VOWEL : Phonemes.CONSONANT;
+            }
+            if (missing == 0 || attempt >= MAX_PRONOUNCEABLE_ATTEMPTS)
+            {
+                _metrics.generated(started, 1, length);
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Creates {@code count} passwords in one call, writing them back to back
+     * into {@code arena}. Password {@code ii} occupies
+     * {@code arena[offsets[ii] .. offsets[ii + 1])}, so {@code offsets} needs
+     * room for {@code count + 1} entries and {@code arena} for
+     * {@code count * maxLength} characters. Nothing is allocated per password.
+     *
+     * @param count
+     * @param characterSet
+     * @param minLength
+     * @param maxLength
+     * @param arena
+     * @param offsets
+     * @return the number of characters written to {@code arena}
+     * @throws IllegalArgumentException
+     *             if {@code minLength} is negative or above
+     *             {@code maxLength}, or the arrays are too small
+     */
+    public int createPasswords(int count, String characterSet, int minLength, int maxLength, char[] arena, int[] offsets)
+    {
+        return createPasswords(count, Alphabet.of(characterSet), minLength, maxLength, arena, 0, offsets, 0);
+    }
+
+    /**
+     * As {@link #createPasswords(int, String, int, int, char[], int[])}, using
+     * a prepared alphabet.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, Alphabet alphabet, int minLength, int maxLength, char[] arena, int[] offsets)
+    {
+        return createPasswords(count, alphabet, minLength, maxLength, arena, 0, offsets, 0);
+    }
+
+    /**
+     * As {@link #createPasswords(int, Alphabet, int, int, char[], int[])}, but
+     * starts writing at {@code arena[arenaStart]} and
+     * {@code offsets[offsetsStart]}. Offsets are absolute indices into
+     * {@code arena}.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, Alphabet alphabet, int minLength, int maxLength,
+            char[] arena, int arenaStart, int[] offsets, int offsetsStart)
+    {
+        return createPasswords(count, alphabet, minLength, maxLength, arena, arenaStart, offsets, offsetsStart, null);
+    }
+
+    /**
+     * As {@link #createPasswords(int, Alphabet, int, int, char[], int[])}, but
+     * regenerates any password already recorded in {@code unique}, which may
+     * be shared with other generators working on the same run.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, Alphabet alphabet, int minLength, int maxLength, char[] arena, int[] offsets,
+            FingerprintSet unique)
+    {
+        return createPasswords(count, alphabet, minLength, maxLength, arena, 0, offsets, 0, unique);
+    }
+
+    /**
+     * As {@link #createPasswords(int, Alphabet, int, int, char[], int, int[], int)},
+     * rejecting repeats as
+     * {@link #createPasswords(int, Alphabet, int, int, char[], int[], FingerprintSet)}
+     * does; {@code unique} may be null.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, Alphabet alphabet, int minLength, int maxLength,
+            char[] arena, int arenaStart, int[] offsets, int offsetsStart, FingerprintSet unique)
+    {
+        checkBatchAlphabet(alphabet);
+        checkBatch(count, minLength, maxLength, arena.length - arenaStart, offsets.length - offsetsStart);
+        final long started = _metrics.startBatch();
+        offsets[offsetsStart] = arenaStart;
+        final int total = drawLengths(count, minLength, maxLength, offsets, offsetsStart);
+        fillPasswords(alphabet.symbols(), arena, arenaStart, offsets, offsetsStart, count, unique);
+        _metrics.generated(started, count, total);
+        return total;
+    }
+
+    /**
+     * Creates {@code count} passwords following {@code template} back to
+     * back in {@code arena}, laid out as by
+     * {@link #createPasswords(int, String, int, int, char[], int[])}, which
+     * for a template means {@code offsets[ii] == ii * template.getLength()}.
+     * Regenerates any password already recorded in {@code unique}, which may
+     * be null.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, Template template, char[] arena, int[] offsets, FingerprintSet unique)
+    {
+        checkBatch(count, template.getLength(), template.getLength(), arena.length, offsets.length);
+        final long started = _metrics.startBatch();
+        offsets[0] = 0;
+        fillTemplate(template, arena, offsets, 0, count, unique);
+        _metrics.generated(started, count, count * template.getLength());
+        return count * template.getLength();
+    }
+
+    /**
+     * As {@link #createPasswords(int, String, int, int, char[], int[])}, but
+     * writes into {@code out}; see
+     * {@link #createPasswords(int, Alphabet, int, int, CharBuffer, int[])}.
+     *
+     * @return the number of characters written to {@code out}
+     */
+    public int createPasswords(int count, String characterSet, int minLength, int maxLength, CharBuffer out, int[] offsets)
+    {
+        return createPasswords(count, Alphabet.of(characterSet), minLength, maxLength, out, offsets);
+    }
+
+    /**
+     * As {@link #createPasswords(int, Alphabet, int, int, char[], int[])}, but
+     * writes into {@code out} starting at its current position, which is
+     * advanced past the generated characters. Offsets are relative to the
+     * position of {@code out} on entry.
+     *
+     * @return the number of characters written to {@code out}
+     */
+    public int createPasswords(int count, Alphabet alphabet, int minLength, int maxLength, CharBuffer out, int[] offsets)
+    {
+        // The backing array may extend past the limit, so check against what
+        // the buffer allows before taking either path.
+        checkBatchAlphabet(alphabet);
+        checkBatch(count, minLength, maxLength, out.remaining(), offsets.length);
+        if (out.hasArray())
+        {
+            final int start = out.position();
+            final int written = createPasswords(count, alphabet, minLength, maxLength,
+                    out.array(), out.arrayOffset() + start, offsets, 0);
+            for (int ii = 0; ii <= count; ++ii)
+            {
+                offsets[ii] -= out.arrayOffset() + start;
+            }
+            out.position(start + written);
+            return written;
+        }
+        final long started = _metrics.startBatch();
+        final char[] symbols = alphabet.symbols();
+        int written = 0;
+        offsets[0] = 0;
+        for (int ii = 0; ii < count; ++ii)
+        {
+            final int length = getRandomInt(minLength, 1 + maxLength);
+            for (int jj = 0; jj < length; ++jj)
+            {
+                out.put(symbols[getRandomInt(0, symbols.length)]);
+            }
+            written += length;
+            offsets[ii + 1] = written;
+        }
+        _metrics.generated(started, count, written);
+        return written;
     }
 
     public String getCharacterSet(CharSetType... set)
     {
-        StringBuffer sb = new StringBuffer();
+        return getAlphabet(set).toString();
+    }
+
+    /**
+     * Looks up the precomputed alphabet for a combination of character sets.
+     * The order of {@code set} and any repeats in it are ignored, as is
+     * {@link CharSetType#CUSTOM}. Does not allocate or synchronize.
+     *
+     * @param set
+     * @return
+     */
+    public static Alphabet getAlphabet(CharSetType... set)
+    {
+        return getAlphabet(getMask(set));
+    }
+
+    /**
+     * @param mask
+     *            Bit {@code 1 << t.ordinal()} set for each included
+     *            {@link CharSetType} {@code t}
+     * @return
+     */
+    public static Alphabet getAlphabet(int mask)
+    {
+        return ALPHABETS[mask & (ALPHABETS.length - 1)];
+    }
+
+    public static int getMask(CharSetType... set)
+    {
+        int mask = 0;
         for (CharSetType t : set)
         {
-            sb.append(_charSets.get(t));
+            mask |= 1 << t.ordinal();
         }
-        return sb.toString();
+        return mask;
     }
 
-    private static char getRandomChar(String characterSet)
+    /**
+     * @return true if batches are filled with the Vector API, which needs
+     *         the {@code vector} source root in the build and the JVM option
+     *         {@code --add-modules jdk.incubator.vector}; otherwise a scalar
+     *         loop produces the same characters
+     */
+    public static boolean isVectorAccelerated()
     {
-        int pos = getRandomInt(0, characterSet.length());
-        return characterSet.charAt(pos);
+        return SymbolMapper.isVectorized();
+    }
+
+    /**
+     * @return the name of the {@link RandomSource} this generator draws from
+     */
+    public String getRandomSource()
+    {
+        return _randomSource;
+    }
+
+    /**
+     * Makes this generator draw from {@code indices} from now on, dropping
+     * any random bytes still buffered from the previous source. Lets
+     * {@link ParallelGenerator} reuse one worker for many blocks, each with
+     * its own substream.
+     */
+    void setIndices(RandomIndexSource indices)
+    {
+        _indices = indices;
+        if (_mapper != null)
+        {
+            _mapper.discard();
+        }
+    }
+
+    /**
+     * @return the number of bytes this generator has drawn from its CSPRNG
+     */
+    public long getRandomBytesConsumed()
+    {
+        return _indices.getBytesConsumed();
+    }
+
+    /**
+     * First phase of a batch: draws {@code count} lengths and stores their
+     * running sum, starting from zero, in
+     * {@code offsets[offsetsStart + 1 .. offsetsStart + count]}.
+     * {@code offsets[offsetsStart]} is left untouched.
+     *
+     * @return the total number of characters the batch will need
+     */
+    int drawLengths(int count, int minLength, int maxLength, int[] offsets, int offsetsStart)
+    {
+        int total = 0;
+        for (int ii = 1; ii <= count; ++ii)
+        {
+            total += getRandomInt(minLength, 1 + maxLength);
+            offsets[offsetsStart + ii] = total;
+        }
+        return total;
+    }
+
+    /**
+     * Second phase of a batch: shifts the relative offsets written by
+     * {@link #drawLengths} by {@code base} and fills the corresponding
+     * characters of {@code arena}, starting at {@code arena[base]}. Only
+     * {@code offsets[offsetsStart + 1 .. offsetsStart + count]} is read, so
+     * adjacent slices of the same batch may be filled concurrently.
+     */
+    void fillPasswords(char[] alphabet, char[] arena, int base, int[] offsets, int offsetsStart, int count,
+            FingerprintSet unique)
+    {
+        final boolean mapped = mapper().supports(alphabet);
+        if (mapped && count > 0)
+        {
+            // The passwords are contiguous, so fill them all in one run.
+            _mapper.fill(alphabet, arena, base, base + offsets[offsetsStart + count], _indices);
+        }
+        int pos = base;
+        for (int ii = 1; ii <= count; ++ii)
+        {
+            final int start = pos;
+            final int end = base + offsets[offsetsStart + ii];
+            offsets[offsetsStart + ii] = end;
+            pos = end;
+            for (int attempt = 0;; ++attempt)
+            {
+                if (mapped && attempt > 0)
+                {
+                    _mapper.fill(alphabet, arena, start, end, _indices);
+                }
+                else if (!mapped)
+                {
+                    for (int jj = start; jj < end; ++jj)
+                    {
+                        arena[jj] = alphabet[getRandomInt(0, alphabet.length)];
+                    }
+                }
+                if (unique == null || unique.add(arena, start, end))
+                {
+                    break;
+                }
+                // Keep the drawn length and redraw the characters.
+                if (attempt == MAX_UNIQUE_ATTEMPTS)
+                {
+                    throw new IllegalArgumentException(Messages.getString("Generator.tooFewUnique")); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills passwords {@code [first, first + count)} of a template batch,
+     * each at {@code arena[ii * length]}, and sets
+     * {@code offsets[first + 1 .. first + count]}; {@code offsets[first]}
+     * is left untouched, so adjacent ranges of the same batch may be filled
+     * concurrently.
+     */
+    void fillTemplate(Template template, char[] arena, int[] offsets, int first, int count, FingerprintSet unique)
+    {
+        final SymbolMapper mapper = mapper();
+        final int length = template.getLength();
+        if (unique == null)
+        {
+            for (int ii = first; ii < first + count; ++ii)
+            {
+                offsets[ii + 1] = (ii + 1) * length;
+            }
+            mapper.fill(template, arena, first * length, count, _indices);
+            return;
+        }
+        for (int ii = first; ii < first + count; ++ii)
+        {
+            final int start = ii * length;
+            offsets[ii + 1] = start + length;
+            for (int attempt = 0;; ++attempt)
+            {
+                mapper.fill(template, arena, start, 1, _indices);
+                if (unique.add(arena, start, start + length))
+                {
+                    break;
+                }
+                if (attempt == MAX_UNIQUE_ATTEMPTS)
+                {
+                    throw new IllegalArgumentException(Messages.getString("Generator.tooFewUnique")); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    private SymbolMapper mapper()
+    {
+        if (_mapper == null)
+        {
+            _mapper = SymbolMapper.create();
+        }
+        return _mapper;
+    }
+
+    static void checkAlphabet(Alphabet alphabet)
+    {
+        if (alphabet.isEmpty())
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.emptyCharacterSet")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * The batch paths size and lay out passwords by {@code char}, one per
+     * symbol.
+     */
+    static void checkBatchAlphabet(Alphabet alphabet)
+    {
+        checkAlphabet(alphabet);
+        if (alphabet.hasSupplementary())
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.supplementaryBatch")); //$NON-NLS-1$
+        }
+    }
+
+    static void checkBatch(int count, int minLength, int maxLength, int arenaRoom, int offsetsRoom)
+    {
+        if (minLength < 0 || minLength > maxLength)
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.badLengths") + minLength + ".." + maxLength); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        if (count < 0 || offsetsRoom < count + 1 || (long) count * maxLength > arenaRoom)
+        {
+            throw new IllegalArgumentException(Messages.getString("Generator.batchTooSmall")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * The policy path for alphabets with supplementary characters: the
+     * shuffle works on code points, which are only then encoded.
+     *
+     * @return the number of {@code char}s written
+     */
+    private int createSupplementary(PasswordPolicy policy, int length, char[] dest, int offset)
+    {
+        if (_codePoints.length < length)
+        {
+            _codePoints = new int[length];
+        }
+        int n = 0;
+        for (int ii = 0; ii < policy.classCount(); ++ii)
+        {
+            final int[] codePoints = policy.classAlphabet(ii).codePoints();
+            for (int jj = 0; jj < _classCounts[ii]; ++jj)
+            {
+                _codePoints[n++] = codePoints[getRandomInt(0, codePoints.length)];
+            }
+        }
+        for (int ii = length - 1; ii > 0; --ii)
+        {
+            final int jj = getRandomInt(0, ii + 1);
+            final int cp = _codePoints[ii];
+            _codePoints[ii] = _codePoints[jj];
+            _codePoints[jj] = cp;
+        }
+        int pos = offset;
+        for (int ii = 0; ii < length; ++ii)
+        {
+            pos += Character.toChars(_codePoints[ii], dest, pos);
+        }
+        Arrays.fill(_codePoints, 0, length, 0);
+        return pos - offset;
     }
 
     /**
@@ -84,21 +1017,55 @@ public class Generator {
      *            Result will be less than this value
      * @return
      */
-    private static int getRandomInt(int min, int max)
+    private int getRandomInt(int min, int max)
     {
-        return min + (int) Math.floor((max - min) * getRandomDouble());
+        return min + _indices.nextInt(max - min);
     }
 
-    private static double getRandomDouble()
+    private static Alphabet[] buildAlphabets()
     {
-        return _rng.nextDouble();
+        // Built-in sets only, in CharSetType order.
+        final String[] sets = { UPPER, LOWER, DIGIT, PUNCTUATION, SPECIAL };
+        final Alphabet[] result = new Alphabet[1 << sets.length];
+        for (int mask = 0; mask < result.length; ++mask)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int ii = 0; ii < sets.length; ++ii)
+            {
+                if ((mask & (1 << ii)) != 0)
+                {
+                    sb.append(sets[ii]);
+                }
+            }
+            result[mask] = Alphabet.of(sb.toString());
+        }
+        return result;
     }
 
-    private Map<CharSetType, String> _charSets = new HashMap<>();
-    private static final SecureRandom _rng = new SecureRandom();
+    private final String _randomSource;
+    private RandomIndexSource _indices;
+    private final Metrics.Recorder _metrics;
+    private final int[] _classCounts = new int[CharSetType.values().length];
+    /** Vectorized batch filling; made on first use, null where unavailable. */
+    private SymbolMapper _mapper;
+    /** Scratch for {@link #createSupplementary}; wiped after each use. */
+    private int[] _codePoints = new int[0];
+    private static final SecureRandom _sharedRng = new SecureRandom();
     private static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"; //$NON-NLS-1$
     private static final String LOWER = "abcdefghijklmnopqrstuvwxyz"; //$NON-NLS-1$
     private static final String DIGIT = "0123456789"; //$NON-NLS-1$
     private static final String PUNCTUATION = "!();:'\",.?/"; //$NON-NLS-1$
     private static final String SPECIAL = "@#$%^&_|{}[]<>+-*="; //$NON-NLS-1$
+    private static final int MAX_PRONOUNCEABLE_ATTEMPTS = 100;
+    /**
+     * Consecutive repeats after which the space of passwords is taken to be
+     * used up.
+     */
+    private static final int MAX_UNIQUE_ATTEMPTS = 1000;
+    private static final char[] NO_CHARS = new char[0];
+    private static final int UPPER_MASK = getMask(CharSetType.UPPER);
+    private static final int DIGIT_MASK = getMask(CharSetType.DIGIT);
+    private static final int SYMBOL_MASK = getMask(CharSetType.PUNCTUATION, CharSetType.SPECIAL);
+    /** Indexed by {@link #getMask(CharSetType...)}; order matches CharSetType. */
+    private static final Alphabet[] ALPHABETS = buildAlphabets();
 }
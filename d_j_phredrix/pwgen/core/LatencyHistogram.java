@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of values in logarithmic buckets, in the manner of HdrHistogram:
+ * each power of two is split into {@value #SUB_BUCKETS} equal sub-buckets,
+ * so any recorded value is known to within 12.5%. Buckets are striped
+ * {@link LongAdder}s, so recording from many threads does not contend.
+ */
+final class LatencyHistogram {
+
+    void record(long value)
+    {
+        _buckets[index(Math.max(0, value))].increment();
+        _max.accumulate(value);
+    }
+
+    /**
+     * @param fraction
+     *            In {@code [0, 1]}
+     * @return the upper bound of the bucket holding that share of recorded
+     *         values, or zero if none were recorded
+     */
+    long percentile(double fraction)
+    {
+        final long[] counts = new long[_buckets.length];
+        long total = 0;
+        for (int ii = 0; ii < counts.length; ++ii)
+        {
+            counts[ii] = _buckets[ii].sum();
+            total += counts[ii];
+        }
+        final long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int ii = 0; ii < counts.length; ++ii)
+        {
+            seen += counts[ii];
+            if (seen >= rank && counts[ii] > 0)
+            {
+                return Math.min(upperBound(ii), getMax());
+            }
+        }
+        return 0;
+    }
+
+    long count()
+    {
+        long total = 0;
+        for (LongAdder b : _buckets)
+        {
+            total += b.sum();
+        }
+        return total;
+    }
+
+    long getMax()
+    {
+        return _max.get();
+    }
+
+    void reset()
+    {
+        for (LongAdder b : _buckets)
+        {
+            b.reset();
+        }
+        _max.reset();
+    }
+
+    /**
+     * Values below {@code SUB_BUCKETS} get a bucket each; above that the
+     * bucket is the position of the top bit followed by the next
+     * {@code SUB_BITS} bits.
+     */
+    private static int index(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) | (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        final int shift = (index >>> SUB_BITS) - 1;
+        final long sub = index & (SUB_BUCKETS - 1);
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    private final LongAdder[] _buckets = newBuckets();
+    private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+
+    private static LongAdder[] newBuckets()
+    {
+        final LongAdder[] result = new LongAdder[index(Long.MAX_VALUE) + 1];
+        for (int ii = 0; ii < result.length; ++ii)
+        {
+            result[ii] = new LongAdder();
+        }
+        return result;
+    }
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+}
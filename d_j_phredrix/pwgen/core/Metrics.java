@@ -0,0 +1,456 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import d_j_phredrix.pwgen.core.DataModel.ChangeListener.Item;
+
+/**
+ * Process-wide counters for everything the library generates: passwords,
+ * characters, CSPRNG bytes, reseeds, model changes, and a latency histogram
+ * of generation calls. Always on.
+ * <p>
+ * Recording is kept off the shared path: each {@link Generator}, being
+ * confined to one thread, counts into its own {@link Recorder} with plain
+ * writes, and readers add up the live recorders. Latency is measured for
+ * every batch but only for one single-password call in
+ * {@value #SAMPLE_INTERVAL}, which leaves the percentiles unbiased while
+ * keeping the clock reads off most calls.
+ * <p>
+ * Readable over JMX through {@link MetricsMBean} once an application has
+ * called {@link #registerMBean()}, or pushed to a {@link Listener} added
+ * with {@link #addListener(Listener)}. Nothing that generates passwords
+ * registers the MBean, since starting the platform MBean server costs
+ * hundreds of milliseconds that a one-shot command line run cannot spare.
+ */
+public final class Metrics implements MetricsMBean {
+
+    /**
+     * Receives recorded events on the thread that caused them. Must be quick
+     * and must not throw.
+     */
+    public interface Listener {
+        default void generated(int passwords, long characters)
+        {
+        }
+
+        /**
+         * @param nanos
+         *            Duration of a sampled generation call
+         */
+        default void latencySampled(long nanos)
+        {
+        }
+
+        default void randomBytesConsumed(long bytes)
+        {
+        }
+
+        default void reseeded(String randomSource)
+        {
+        }
+
+        default void modelChanged(Item whatChanged, long nanos)
+        {
+        }
+
+        /**
+         * @param ex
+         *            Why the background producer of a {@link PasswordPool}
+         *            could not make a password for the current settings
+         */
+        default void producerFailed(RuntimeException ex)
+        {
+        }
+    }
+
+    /**
+     * Counts for one thread-confined generator. Only the owner writes; the
+     * writes are opaque so that readers on other threads see whole values.
+     */
+    static final class Recorder {
+
+        /**
+         * @return a start time to pass to {@link #generated}, or
+         *         {@link #NOT_TIMED} if this call is not sampled
+         */
+        long start()
+        {
+            if (--_countdown > 0)
+            {
+                return NOT_TIMED;
+            }
+            _countdown = SAMPLE_INTERVAL;
+            return System.nanoTime();
+        }
+
+        /**
+         * @return a start time for a batch, which is always timed
+         */
+        long startBatch()
+        {
+            return System.nanoTime();
+        }
+
+        void generated(long started, int passwords, long characters)
+        {
+            PASSWORDS.setOpaque(this, _passwords + passwords);
+            CHARACTERS.setOpaque(this, _characters + characters);
+            final Metrics m = GLOBAL;
+            if (started != NOT_TIMED)
+            {
+                m.sampled(System.nanoTime() - started);
+            }
+            if (m._listeners.length > 0)
+            {
+                for (Listener l : m._listeners)
+                {
+                    l.generated(passwords, characters);
+                }
+            }
+        }
+
+        private long passwords()
+        {
+            return (long) PASSWORDS.getOpaque(this);
+        }
+
+        private long characters()
+        {
+            return (long) CHARACTERS.getOpaque(this);
+        }
+
+        /**
+         * Folds the counts into the totals once the generator is gone.
+         */
+        private void retire()
+        {
+            GLOBAL._recorders.remove(this);
+            GLOBAL._passwords.add(passwords());
+            GLOBAL._characters.add(characters());
+        }
+
+        private long _passwords;
+        private long _characters;
+        private int _countdown = 1;
+
+        private static final long NOT_TIMED = Long.MIN_VALUE;
+        private static final VarHandle PASSWORDS;
+        private static final VarHandle CHARACTERS;
+
+        static
+        {
+            try
+            {
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                PASSWORDS = lookup.findVarHandle(Recorder.class, "_passwords", long.class); //$NON-NLS-1$
+                CHARACTERS = lookup.findVarHandle(Recorder.class, "_characters", long.class); //$NON-NLS-1$
+            }
+            catch (ReflectiveOperationException ex)
+            {
+                throw new ExceptionInInitializerError(ex);
+            }
+        }
+    }
+
+    /**
+     * @return the shared instance
+     */
+    public static Metrics global()
+    {
+        return GLOBAL;
+    }
+
+    /**
+     * Registers the shared instance with the platform MBean server as
+     * {@value #OBJECT_NAME}. For long-running applications, the UI and the
+     * server; calls after the first do nothing.
+     */
+    public static synchronized void registerMBean()
+    {
+        if (_registered)
+        {
+            return;
+        }
+        _registered = true;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(OBJECT_NAME));
+        }
+        catch (JMException | SecurityException ex)
+        {
+            // Still usable directly and through listeners.
+        }
+    }
+
+    private Metrics()
+    {
+    }
+
+    public synchronized void addListener(Listener l)
+    {
+        final Listener[] listeners = Arrays.copyOf(_listeners, _listeners.length + 1);
+        listeners[_listeners.length] = l;
+        _listeners = listeners;
+    }
+
+    public synchronized void removeListener(Listener l)
+    {
+        final int index = Arrays.asList(_listeners).indexOf(l);
+        if (index >= 0)
+        {
+            final Listener[] listeners = new Listener[_listeners.length - 1];
+            System.arraycopy(_listeners, 0, listeners, 0, index);
+            System.arraycopy(_listeners, index + 1, listeners, index, listeners.length - index);
+            _listeners = listeners;
+        }
+    }
+
+    @Override
+    public long getPasswordsGenerated()
+    {
+        return totalPasswords() - _passwordsAtReset;
+    }
+
+    @Override
+    public long getCharactersGenerated()
+    {
+        return totalCharacters() - _charactersAtReset;
+    }
+
+    @Override
+    public long getLatencySamples()
+    {
+        return _latency.count();
+    }
+
+    @Override
+    public long getRandomBytesConsumed()
+    {
+        return _randomBytes.sum();
+    }
+
+    @Override
+    public long getReseeds()
+    {
+        return _reseeds.sum();
+    }
+
+    @Override
+    public long getModelChanges()
+    {
+        return _modelChanges.sum();
+    }
+
+    @Override
+    public long getProducerFailures()
+    {
+        return _producerFailures.sum();
+    }
+
+    @Override
+    public long getLatencyMedianNanos()
+    {
+        return _latency.percentile(0.5);
+    }
+
+    @Override
+    public long getLatency99thPercentileNanos()
+    {
+        return _latency.percentile(0.99);
+    }
+
+    @Override
+    public long getLatency999thPercentileNanos()
+    {
+        return _latency.percentile(0.999);
+    }
+
+    @Override
+    public long getLatencyMaxNanos()
+    {
+        return _latency.getMax();
+    }
+
+    @Override
+    public long getModelChangeLatencyMaxNanos()
+    {
+        return _modelChangeLatency.getMax();
+    }
+
+    @Override
+    public long getTimeToFirstPasswordMillis()
+    {
+        return Startup.getTimeToFirstPasswordMillis();
+    }
+
+    @Override
+    public long getLatencyPercentileNanos(double fraction)
+    {
+        return _latency.percentile(fraction);
+    }
+
+    /**
+     * Live recorders are never written by readers, so the password and
+     * character counts restart from a baseline rather than from zero.
+     */
+    @Override
+    public synchronized void reset()
+    {
+        // Each baseline is published once, so readers never see a jump.
+        _passwordsAtReset = totalPasswords();
+        _charactersAtReset = totalCharacters();
+        _randomBytes.reset();
+        _reseeds.reset();
+        _modelChanges.reset();
+        _producerFailures.reset();
+        _latency.reset();
+        _modelChangeLatency.reset();
+    }
+
+    /**
+     * @param owner
+     *            Generator the recorder belongs to; its counts are folded
+     *            into the totals when {@code owner} is collected
+     */
+    Recorder newRecorder(Object owner)
+    {
+        final Recorder result = new Recorder();
+        _recorders.add(result);
+        CLEANER.register(owner, result::retire);
+        return result;
+    }
+
+    /**
+     * For work not done through one generator, such as a parallel batch.
+     */
+    void generated(int passwords, long characters, long nanos)
+    {
+        _passwords.add(passwords);
+        _characters.add(characters);
+        sampled(nanos);
+        for (Listener l : _listeners)
+        {
+            l.generated(passwords, characters);
+        }
+    }
+
+    void randomBytesConsumed(long bytes)
+    {
+        _randomBytes.add(bytes);
+        for (Listener l : _listeners)
+        {
+            l.randomBytesConsumed(bytes);
+        }
+    }
+
+    void reseeded(String randomSource)
+    {
+        _reseeds.increment();
+        for (Listener l : _listeners)
+        {
+            l.reseeded(randomSource);
+        }
+    }
+
+    void modelChanged(Item whatChanged, long nanos)
+    {
+        _modelChanges.increment();
+        _modelChangeLatency.record(nanos);
+        for (Listener l : _listeners)
+        {
+            l.modelChanged(whatChanged, nanos);
+        }
+    }
+
+    void producerFailed(RuntimeException ex)
+    {
+        _producerFailures.increment();
+        for (Listener l : _listeners)
+        {
+            l.producerFailed(ex);
+        }
+    }
+
+    private void sampled(long nanos)
+    {
+        _latency.record(nanos);
+        for (Listener l : _listeners)
+        {
+            l.latencySampled(nanos);
+        }
+    }
+
+    /**
+     * @return every password counted since the process started
+     */
+    private long totalPasswords()
+    {
+        long result = _passwords.sum();
+        for (Recorder r : _recorders)
+        {
+            result += r.passwords();
+        }
+        return result;
+    }
+
+    /**
+     * @return every character counted since the process started
+     */
+    private long totalCharacters()
+    {
+        long result = _characters.sum();
+        for (Recorder r : _recorders)
+        {
+            result += r.characters();
+        }
+        return result;
+    }
+
+    private final Set<Recorder> _recorders = ConcurrentHashMap.newKeySet();
+    /** Totals of retired recorders and of work recorded directly. */
+    private final LongAdder _passwords = new LongAdder();
+    private final LongAdder _characters = new LongAdder();
+    private final LongAdder _randomBytes = new LongAdder();
+    private final LongAdder _reseeds = new LongAdder();
+    private final LongAdder _modelChanges = new LongAdder();
+    private final LongAdder _producerFailures = new LongAdder();
+    private final LatencyHistogram _latency = new LatencyHistogram();
+    private final LatencyHistogram _modelChangeLatency = new LatencyHistogram();
+    private volatile Listener[] _listeners = new Listener[0];
+    private volatile long _passwordsAtReset;
+    private volatile long _charactersAtReset;
+
+    public static final String OBJECT_NAME = "d_j_phredrix.pwgen:type=Metrics"; //$NON-NLS-1$
+    /** Single-password calls per latency sample. */
+    public static final int SAMPLE_INTERVAL = 16;
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final Metrics GLOBAL = new Metrics();
+    private static boolean _registered;
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+/**
+ * Management interface of {@link Metrics}, registered with the platform
+ * MBean server as {@value Metrics#OBJECT_NAME} by
+ * {@link Metrics#registerMBean()}. Latencies are of one call into a
+ * {@link Generator}, whether it made one password or a batch, and are
+ * sampled; see {@link Metrics}.
+ */
+public interface MetricsMBean {
+
+    long getPasswordsGenerated();
+
+    long getCharactersGenerated();
+
+    long getLatencySamples();
+
+    long getRandomBytesConsumed();
+
+    long getReseeds();
+
+    long getModelChanges();
+
+    /**
+     * @return the number of settings a {@link PasswordPool} producer could
+     *         not make passwords for
+     */
+    long getProducerFailures();
+
+    long getLatencyMedianNanos();
+
+    long getLatency99thPercentileNanos();
+
+    long getLatency999thPercentileNanos();
+
+    long getLatencyMaxNanos();
+
+    long getModelChangeLatencyMaxNanos();
+
+    /**
+     * @return milliseconds from JVM start to the first password handed out,
+     *         or -1 if there has been none yet
+     */
+    long getTimeToFirstPasswordMillis();
+
+    /**
+     * @param fraction
+     *            In {@code [0, 1]}
+     * @return the generation latency below which that share of calls
+     *         completed, to within 12.5%
+     */
+    long getLatencyPercentileNanos(double fraction);
+
+    /**
+     * Zeroes all counters and histograms.
+     */
+    void reset();
+}
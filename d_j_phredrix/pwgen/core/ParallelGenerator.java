@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Splits large batches across several threads. Each slice of a batch is
+ * handled by its own {@link Generator} with an independently seeded CSPRNG
+ * and writes only to its own part of the output, so workers never contend
+ * on a shared random source or lock. The worker generators are kept for
+ * later batches rather than created per slice.
+ * <p>
+ * With a {@linkplain RandomSource#isReproducible() reproducible} source the
+ * work is instead cut into fixed blocks of {@value #BLOCK} passwords, and
+ * each block draws from its own substream, {@linkplain RandomSource#split()
+ * split} in block order from one root source. Slices then only decide which
+ * thread runs which blocks, so the output is bit-identical whatever the
+ * parallelism, as long as the same sequence of batches is requested. The
+ * exception is uniqueness checking: which of two equal passwords in
+ * different blocks gets regenerated depends on timing.
+ */
+public class ParallelGenerator {
+
+    /**
+     * Work done for one slice of a batch, covering passwords
+     * {@code [from, to)}.
+     */
+    public interface SliceTask {
+        void run(Generator gen, long from, long to) throws Exception;
+    }
+
+    public ParallelGenerator()
+    {
+        this(ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param executor
+     *            Runs the slices of each batch
+     * @param parallelism
+     *            Maximum number of slices a batch is split into
+     */
+    public ParallelGenerator(Executor executor, int parallelism)
+    {
+        this(executor, parallelism, RandomSource.CHACHA20);
+    }
+
+    /**
+     * @param executor
+     *            Runs the slices of each batch
+     * @param parallelism
+     *            Maximum number of slices a batch is split into
+     * @param randomSource
+     *            Name of the {@link RandomSource} each slice creates for
+     *            itself. The platform default {@code SecureRandom} on Linux
+     *            serializes all instances through one native source, which
+     *            would defeat the purpose of per-worker generators, so the
+     *            default is {@value RandomSource#CHACHA20}.
+     */
+    public ParallelGenerator(Executor executor, int parallelism, String randomSource)
+    {
+        // Fail here rather than in a worker if the name is unknown.
+        final RandomSource source = RandomSource.forName(randomSource);
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException(Messages.getString("ParallelGenerator.badParallelism") + parallelism); //$NON-NLS-1$
+        }
+        _executor = executor;
+        _parallelism = parallelism;
+        _randomSource = randomSource;
+        _root = source.isReproducible() ? source : null;
+    }
+
+    public String getRandomSource()
+    {
+        return _randomSource;
+    }
+
+    public int getParallelism()
+    {
+        return _parallelism;
+    }
+
+    /**
+     * @return true if the output depends only on the seed of the random
+     *         source and not on the parallelism
+     */
+    public boolean isReproducible()
+    {
+        return _root != null;
+    }
+
+    /**
+     * Parallel counterpart of
+     * {@link Generator#createPasswords(int, String, int, int, char[], int[])},
+     * producing the same packed layout. Lengths are drawn per slice first, so
+     * that every slice knows where its output starts before any characters
+     * are generated.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, String characterSet, int minLength, int maxLength, char[] arena, int[] offsets)
+    {
+        return createPasswords(count, Alphabet.of(characterSet), minLength, maxLength, arena, offsets);
+    }
+
+    /**
+     * As {@link #createPasswords(int, String, int, int, char[], int[])}, using
+     * a prepared alphabet.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, Alphabet alphabet, int minLength, int maxLength, char[] arena, int[] offsets)
+    {
+        return createPasswords(count, alphabet, minLength, maxLength, arena, offsets, null);
+    }
+
+    /**
+     * As {@link #createPasswords(int, Alphabet, int, int, char[], int[])}, but
+     * regenerates any password already recorded in {@code unique}; see
+     * {@link Generator#createPasswords(int, Alphabet, int, int, char[], int[], FingerprintSet)}.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, Alphabet alphabet, int minLength, int maxLength, char[] arena, int[] offsets,
+            FingerprintSet unique)
+    {
+        Generator.checkBatchAlphabet(alphabet);
+        Generator.checkBatch(count, minLength, maxLength, arena.length, offsets.length);
+        final long started = System.nanoTime();
+        final char[] symbols = alphabet.symbols();
+        final int units = unitCount(count);
+        final RandomIndexSource[] indices = splitSources(units);
+        final int[] bases = new int[units + 1];
+        runUnits(count, units, indices, (gen, unit, from, to) -> bases[unit + 1] = gen.drawLengths((int) (to - from),
+                minLength, maxLength, offsets, (int) from));
+        for (int ii = 0; ii < units; ++ii)
+        {
+            bases[ii + 1] += bases[ii];
+        }
+        offsets[0] = 0;
+        // A reproducible block carries on from where its lengths left off.
+        runUnits(count, units, indices, (gen, unit, from, to) -> gen.fillPasswords(symbols, arena, bases[unit],
+                offsets, (int) from, (int) (to - from), unique));
+        Metrics.global().generated(count, bases[units], System.nanoTime() - started);
+        return bases[units];
+    }
+
+    /**
+     * Parallel counterpart of
+     * {@link Generator#createPasswords(int, Template, char[], int[], FingerprintSet)}.
+     * Every password has the template's length, so the slices need no first
+     * phase to find where they start.
+     *
+     * @return the number of characters written to {@code arena}
+     */
+    public int createPasswords(int count, Template template, char[] arena, int[] offsets, FingerprintSet unique)
+    {
+        Generator.checkBatch(count, template.getLength(), template.getLength(), arena.length, offsets.length);
+        final long started = System.nanoTime();
+        final int units = unitCount(count);
+        final RandomIndexSource[] indices = splitSources(units);
+        offsets[0] = 0;
+        runUnits(count, units, indices, (gen, unit, from, to) -> gen.fillTemplate(template, arena, offsets,
+                (int) from, (int) (to - from), unique));
+        final int total = count * template.getLength();
+        Metrics.global().generated(count, total, System.nanoTime() - started);
+        return total;
+    }
+
+    /**
+     * Splits {@code [0, count)} into contiguous slices and runs {@code task}
+     * on each, with an independently seeded {@link Generator} per slice.
+     * Returns once every slice has finished. With a reproducible source the
+     * task is run once per block instead, in waves of {@value #WAVE_BLOCKS}
+     * blocks so that the substreams split up front stay few.
+     */
+    public void forEachSlice(long count, SliceTask task)
+    {
+        final long wave = _root == null ? Math.max(1, count) : (long) WAVE_BLOCKS * BLOCK;
+        long start = 0;
+        do
+        {
+            final long offset = start;
+            final long n = Math.min(wave, count - start);
+            final int units = unitCount(n);
+            runUnits(n, units, splitSources(units),
+                    (gen, unit, from, to) -> task.run(gen, offset + from, offset + to));
+            start += n;
+        }
+        while (start < count);
+    }
+
+    private interface IndexedTask {
+        void run(Generator gen, int unit, long from, long to) throws Exception;
+    }
+
+    private int sliceCount(long count)
+    {
+        return (int) Math.max(1, Math.min(_parallelism, count / MIN_SLICE));
+    }
+
+    /**
+     * @return the number of parts a batch of {@code count} is generated in:
+     *         one per slice, or with a reproducible source one per block
+     */
+    private int unitCount(long count)
+    {
+        return _root == null ? sliceCount(count) : (int) Math.max(1, (count + BLOCK - 1) / BLOCK);
+    }
+
+    /**
+     * @return one substream per block, split in order from the root, or null
+     *         without a reproducible source
+     */
+    private RandomIndexSource[] splitSources(int units)
+    {
+        if (_root == null)
+        {
+            return null;
+        }
+        final RandomIndexSource[] result = new RandomIndexSource[units];
+        synchronized (_root)
+        {
+            for (int ii = 0; ii < units; ++ii)
+            {
+                result[ii] = new RandomIndexSource(_root.split());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs {@code task} on each of {@code units} contiguous parts of
+     * {@code [0, count)}, spread over at most {@link #getParallelism()}
+     * slices. Each slice borrows a worker generator, which draws from
+     * {@code indices[unit]} for each unit if given.
+     */
+    private void runUnits(long count, int units, RandomIndexSource[] indices, IndexedTask task)
+    {
+        final int slices = Math.min(_parallelism, units);
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[slices];
+        for (int ii = 0; ii < slices; ++ii)
+        {
+            final int first = (int) ((long) units * ii / slices);
+            final int last = (int) ((long) units * (ii + 1) / slices);
+            futures[ii] = CompletableFuture.runAsync(() -> {
+                final Generator gen = borrowWorker();
+                try
+                {
+                    for (int unit = first; unit < last; ++unit)
+                    {
+                        if (indices != null)
+                        {
+                            gen.setIndices(indices[unit]);
+                        }
+                        task.run(gen, unit, unitStart(count, units, unit), unitStart(count, units, unit + 1));
+                    }
+                }
+                catch (RuntimeException ex)
+                {
+                    throw ex;
+                }
+                catch (Exception ex)
+                {
+                    throw new CompletionException(ex);
+                }
+                finally
+                {
+                    _workers.offer(gen);
+                }
+            }, _executor);
+        }
+        try
+        {
+            CompletableFuture.allOf(futures).join();
+        }
+        catch (CompletionException ex)
+        {
+            if (ex.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private long unitStart(long count, int units, int unit)
+    {
+        return _root == null ? count * unit / units : Math.min(count, (long) unit * BLOCK);
+    }
+
+    /**
+     * @return an idle worker generator, or a new one if all are in use. At
+     *         most one per slice running at once is ever created, and each
+     *         registers its metrics only once.
+     */
+    private Generator borrowWorker()
+    {
+        final Generator result = _workers.poll();
+        return result != null ? result : new Generator(_randomSource);
+    }
+
+    private final Executor _executor;
+    private final int _parallelism;
+    private final String _randomSource;
+    /** Source the blocks' substreams are split from; null unless reproducible. */
+    private final RandomSource _root;
+    /** Idle worker generators, each used by one slice at a time. */
+    private final ConcurrentLinkedQueue<Generator> _workers = new ConcurrentLinkedQueue<>();
+
+    private static final int MIN_SLICE = 4096;
+    /** Passwords per substream with a reproducible source. */
+    private static final int BLOCK = 4096;
+    /** Blocks split at a time by {@link #forEachSlice}. */
+    private static final int WAVE_BLOCKS = 1024;
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+
+/**
+ * How a passphrase is put together from words: how many, what goes between
+ * them, and whether to capitalize each word and add a digit to one of them.
+ * Immutable.
+ */
+public final class PassphraseFormat {
+
+    public PassphraseFormat(int wordCount, String separator, boolean capitalize, boolean injectDigit)
+    {
+        this(wordCount, separator, capitalize, injectDigit, Generator.getAlphabet(CharSetType.DIGIT));
+    }
+
+    /**
+     * @param digits
+     *            What {@code injectDigit} draws from, such as the digits that
+     *            are not excluded
+     */
+    public PassphraseFormat(int wordCount, String separator, boolean capitalize, boolean injectDigit,
+            Alphabet digits)
+    {
+        if (injectDigit && (digits.isEmpty() || digits.hasSupplementary()))
+        {
+            throw new IllegalArgumentException(Messages.getString("PassphraseFormat.noDigits")); //$NON-NLS-1$
+        }
+        if (wordCount < 1)
+        {
+            throw new IllegalArgumentException(Messages.getString("PassphraseFormat.badWordCount") + wordCount); //$NON-NLS-1$
+        }
+        _wordCount = wordCount;
+        _separator = separator;
+        _capitalize = capitalize;
+        _injectDigit = injectDigit;
+        _digits = digits.symbols();
+    }
+
+    public int getWordCount()
+    {
+        return _wordCount;
+    }
+
+    public String getSeparator()
+    {
+        return _separator;
+    }
+
+    public boolean isCapitalize()
+    {
+        return _capitalize;
+    }
+
+    public boolean isInjectDigit()
+    {
+        return _injectDigit;
+    }
+
+    /**
+     * The characters a digit is drawn from. Never modified and never handed
+     * outside the package.
+     */
+    char[] digits()
+    {
+        return _digits;
+    }
+
+    /**
+     * @return the most characters a passphrase drawn from {@code words} can
+     *         have
+     */
+    public int getMaxLength(WordList words)
+    {
+        return _wordCount * words.getMaxWordLength() + (_wordCount - 1) * _separator.length() + (_injectDigit ? 1 : 0);
+    }
+
+    private final int _wordCount;
+    private final String _separator;
+    private final boolean _capitalize;
+    private final boolean _injectDigit;
+    private final char[] _digits;
+}
@@ -0,0 +1,479 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+
+/**
+ * A minimum number of characters from each selected character set, met by
+ * construction rather than by regenerating until a password passes.
+ * <p>
+ * For a given length the generator first decides how many characters come
+ * from each set, weighting every split by the number of passwords that have
+ * it, then draws that many characters from each set and shuffles them. Every
+ * compliant password of that length is therefore equally likely, and the
+ * cost does not depend on how likely a plain random password is to comply.
+ * <p>
+ * {@link CharSetType#CUSTOM} stands for a user-defined set of characters,
+ * and any characters may be excluded from the whole alphabet. The sets are
+ * compiled once per policy into disjoint {@link Alphabet}s: each set loses
+ * the excluded characters and any already in an earlier set, so every
+ * character belongs to exactly one set and counts towards its minimum.
+ * <p>
+ * Immutable and safe to share between threads; the counting tables are
+ * built on first use and cached.
+ */
+public final class PasswordPolicy {
+
+    /**
+     * @param charSetMask
+     *            See {@link Generator#getMask(CharSetType...)}
+     * @param minimums
+     *            Indexed by {@link CharSetType#ordinal()}; entries for sets
+     *            not in {@code charSetMask} are ignored
+     * @return the compiled policy
+     */
+    public static PasswordPolicy of(int charSetMask, int[] minimums)
+    {
+        return of(charSetMask, minimums, "", ""); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * @param charSetMask
+     *            See {@link Generator#getMask(CharSetType...)}
+     * @param minimums
+     *            Indexed by {@link CharSetType#ordinal()}; entries for sets
+     *            not in {@code charSetMask} are ignored
+     * @param included
+     *            The characters of {@link CharSetType#CUSTOM}, used if it is
+     *            in {@code charSetMask}; may include supplementary characters
+     * @param excluded
+     *            Characters never to use, whichever set they are in
+     * @return the compiled policy
+     */
+    public static PasswordPolicy of(int charSetMask, int[] minimums, String included, String excluded)
+    {
+        for (int min : minimums)
+        {
+            if (min < 0)
+            {
+                throw new IllegalArgumentException(Messages.getString("PasswordPolicy.negativeMinimum") + min); //$NON-NLS-1$
+            }
+        }
+        return new PasswordPolicy(charSetMask, minimums, included, excluded);
+    }
+
+    private PasswordPolicy(int charSetMask, int[] minimums, String included, String excluded)
+    {
+        final Alphabet exclude = Alphabet.distinct(excluded);
+        Alphabet all = Generator.getAlphabet(0);
+        final int classCount = Integer.bitCount(charSetMask);
+        _classes = new Alphabet[classCount];
+        _sizes = new BigInteger[classCount];
+        _minimums = new int[classCount];
+        _types = new CharSetType[classCount];
+        int jj = 0;
+        for (CharSetType t : CharSetType.values())
+        {
+            if ((charSetMask & (1 << t.ordinal())) != 0)
+            {
+                final Alphabet base = t == CharSetType.CUSTOM ? Alphabet.distinct(included) : Generator.getAlphabet(t);
+                _types[jj] = t;
+                _classes[jj] = base.without(exclude).without(all);
+                _sizes[jj] = BigInteger.valueOf(_classes[jj].size());
+                all = all.plus(_classes[jj]);
+                _minimums[jj] = minimums[t.ordinal()];
+                ++jj;
+            }
+        }
+        _alphabet = all;
+        _excluded = exclude;
+        _phonemes = Phonemes.candidatesWithout(exclude);
+        Alphabet symbols = Generator.getAlphabet(0);
+        for (int ii = 0; ii < classCount; ++ii)
+        {
+            if (_types[ii] == CharSetType.PUNCTUATION || _types[ii] == CharSetType.SPECIAL
+                    || _types[ii] == CharSetType.CUSTOM)
+            {
+                symbols = symbols.plus(_classes[ii]);
+            }
+        }
+        _pronounceableSymbols = symbols;
+        boolean satisfiable = !all.isEmpty();
+        for (int ii = 0; ii < classCount; ++ii)
+        {
+            satisfiable &= _minimums[ii] == 0 || !_classes[ii].isEmpty();
+        }
+        _satisfiable = satisfiable;
+        _restMinimum = new int[classCount + 1];
+        for (int ii = classCount - 1; ii >= 0; --ii)
+        {
+            _restMinimum[ii] = _restMinimum[ii + 1] + _minimums[ii];
+        }
+        _cumulative = new AtomicReferenceArray<>(Math.max(0, classCount - 1) * (CACHED_LENGTH + 1));
+        _smallCumulative = new AtomicReferenceArray<>(_cumulative.length());
+        _counts = new BigInteger[0][];
+    }
+
+    /**
+     * @return all characters a password may contain
+     */
+    public Alphabet getAlphabet()
+    {
+        return _alphabet;
+    }
+
+    /**
+     * @return the required number of characters from {@code type}; zero if
+     *         the set is not selected
+     */
+    public int getMinimum(CharSetType type)
+    {
+        for (int ii = 0; ii < _types.length; ++ii)
+        {
+            if (_types[ii] == type)
+            {
+                return _minimums[ii];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the shortest password that can satisfy the policy
+     */
+    public int getMinLength()
+    {
+        return _restMinimum[0];
+    }
+
+    /**
+     * @return false if any password over the alphabet complies, in which
+     *         case the generator skips the construction altogether
+     */
+    public boolean isConstrained()
+    {
+        return _restMinimum[0] > 0;
+    }
+
+    /**
+     * @return false if the alphabet is empty, or a set with a minimum has no
+     *         characters left once exclusions and overlaps are removed
+     */
+    public boolean isSatisfiable()
+    {
+        return _satisfiable;
+    }
+
+    /**
+     * @return the characters drawn for {@code type}, without exclusions and
+     *         those of earlier sets; null if the set is not selected
+     */
+    Alphabet classOf(CharSetType type)
+    {
+        for (int ii = 0; ii < _types.length; ++ii)
+        {
+            if (_types[ii] == type)
+            {
+                return _classes[ii];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return characters never to use, whichever set they are in
+     */
+    Alphabet excluded()
+    {
+        return _excluded;
+    }
+
+    /**
+     * @return the pronounceable-password phoneme table without elements that
+     *         use excluded letters, or null if the exclusions leave too few;
+     *         see {@link Phonemes#candidatesWithout(Alphabet)}
+     */
+    int[][] phonemes()
+    {
+        return _phonemes;
+    }
+
+    /**
+     * @return the punctuation, special and custom characters a
+     *         pronounceable password mixes in
+     */
+    Alphabet pronounceableSymbols()
+    {
+        return _pronounceableSymbols;
+    }
+
+    /**
+     * @return true if {@code password} uses only the alphabet and has at
+     *         least the minimum from each set; constant time per character
+     */
+    public boolean isSatisfiedBy(CharSequence password)
+    {
+        final int[] counts = new int[_classes.length];
+        for (int ii = 0; ii < password.length();)
+        {
+            final int cp = Character.codePointAt(password, ii);
+            int jj = 0;
+            while (jj < _classes.length && !_classes[jj].contains(cp))
+            {
+                ++jj;
+            }
+            if (jj == _classes.length)
+            {
+                return false;
+            }
+            ++counts[jj];
+            ii += Character.charCount(cp);
+        }
+        for (int jj = 0; jj < _classes.length; ++jj)
+        {
+            if (counts[jj] < _minimums[jj])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int classCount()
+    {
+        return _classes.length;
+    }
+
+    Alphabet classAlphabet(int index)
+    {
+        return _classes[index];
+    }
+
+    /**
+     * Decides how many of {@code length} characters come from each set, so
+     * that each split is as likely as the share of compliant passwords
+     * having it.
+     *
+     * @param counts
+     *            Receives the count for each selected set, in
+     *            {@link CharSetType} order
+     */
+    void drawCounts(RandomIndexSource indices, int length, int[] counts)
+    {
+        final BigInteger[][] n = counts(length);
+        final int last = _classes.length - 1;
+        if (n[0][length].bitLength() < Long.SIZE)
+        {
+            // Every count this draw uses is at most n[0][length], so all fit.
+            drawSmallCounts(indices, length, counts, n);
+            return;
+        }
+        int remaining = length;
+        for (int ii = 0; ii < last; ++ii)
+        {
+            final BigInteger[] cumulative = cumulative(ii, remaining, n);
+            final BigInteger target = indices.nextBigInteger(n[ii][remaining]);
+            int lo = 0;
+            int hi = cumulative.length - 1;
+            while (lo < hi)
+            {
+                final int mid = (lo + hi) >>> 1;
+                if (target.compareTo(cumulative[mid]) < 0)
+                {
+                    hi = mid;
+                }
+                else
+                {
+                    lo = mid + 1;
+                }
+            }
+            counts[ii] = _minimums[ii] + lo;
+            remaining -= counts[ii];
+        }
+        counts[last] = remaining;
+    }
+
+    /**
+     * {@link #drawCounts} for lengths whose counts fit in a long: the same
+     * draw, with the same random bits, but no allocation once the tables
+     * are cached.
+     */
+    private void drawSmallCounts(RandomIndexSource indices, int length, int[] counts, BigInteger[][] n)
+    {
+        final int last = _classes.length - 1;
+        int remaining = length;
+        for (int ii = 0; ii < last; ++ii)
+        {
+            final long[] cumulative = smallCumulative(ii, remaining, n);
+            final long target = indices.nextLong(n[ii][remaining].longValue());
+            int lo = 0;
+            int hi = cumulative.length - 1;
+            while (lo < hi)
+            {
+                final int mid = (lo + hi) >>> 1;
+                if (target < cumulative[mid])
+                {
+                    hi = mid;
+                }
+                else
+                {
+                    lo = mid + 1;
+                }
+            }
+            counts[ii] = _minimums[ii] + lo;
+            remaining -= counts[ii];
+        }
+        counts[last] = remaining;
+    }
+
+    /**
+     * @return {@code n[j][r]}, the number of ways the sets from {@code j}
+     *         onwards can fill {@code r} positions while meeting their
+     *         minimums, for every {@code r} up to at least {@code length}
+     */
+    private BigInteger[][] counts(int length)
+    {
+        BigInteger[][] n = _counts;
+        if (n.length == 0 || n[0].length <= length)
+        {
+            synchronized (this)
+            {
+                n = _counts;
+                if (n.length == 0 || n[0].length <= length)
+                {
+                    n = buildCounts(Math.max(length, 2 * (n.length == 0 ? 0 : n[0].length - 1)));
+                    _counts = n;
+                }
+            }
+        }
+        return n;
+    }
+
+    private BigInteger[][] buildCounts(int maxLength)
+    {
+        final int classCount = _classes.length;
+        final BigInteger[][] n = new BigInteger[classCount + 1][maxLength + 1];
+        Arrays.fill(n[classCount], BigInteger.ZERO);
+        n[classCount][0] = BigInteger.ONE;
+        for (int jj = classCount - 1; jj >= 0; --jj)
+        {
+            for (int r = 0; r <= maxLength; ++r)
+            {
+                final BigInteger[] terms = terms(jj, r, n);
+                n[jj][r] = terms.length == 0 ? BigInteger.ZERO : terms[terms.length - 1];
+            }
+        }
+        return n;
+    }
+
+    private BigInteger[] cumulative(int classIndex, int remaining, BigInteger[][] n)
+    {
+        if (remaining > CACHED_LENGTH)
+        {
+            return terms(classIndex, remaining, n);
+        }
+        final int slot = classIndex * (CACHED_LENGTH + 1) + remaining;
+        BigInteger[] result = _cumulative.get(slot);
+        if (result == null)
+        {
+            result = terms(classIndex, remaining, n);
+            _cumulative.set(slot, result);
+        }
+        return result;
+    }
+
+    /**
+     * As {@link #cumulative}, as longs; only called when they fit.
+     */
+    private long[] smallCumulative(int classIndex, int remaining, BigInteger[][] n)
+    {
+        if (remaining > CACHED_LENGTH)
+        {
+            return toLongs(terms(classIndex, remaining, n));
+        }
+        final int slot = classIndex * (CACHED_LENGTH + 1) + remaining;
+        long[] result = _smallCumulative.get(slot);
+        if (result == null)
+        {
+            result = toLongs(cumulative(classIndex, remaining, n));
+            _smallCumulative.set(slot, result);
+        }
+        return result;
+    }
+
+    private static long[] toLongs(BigInteger[] values)
+    {
+        final long[] result = new long[values.length];
+        for (int ii = 0; ii < values.length; ++ii)
+        {
+            result[ii] = values[ii].longValue();
+        }
+        return result;
+    }
+
+    /**
+     * @return running sums, over each allowed count {@code k} for set
+     *         {@code j}, of {@code C(r, k) * size(j)^k * n[j + 1][r - k]}
+     */
+    private BigInteger[] terms(int j, int r, BigInteger[][] n)
+    {
+        final int minK = _minimums[j];
+        final int maxK = r - _restMinimum[j + 1];
+        if (maxK < minK)
+        {
+            return new BigInteger[0];
+        }
+        final BigInteger[] result = new BigInteger[maxK - minK + 1];
+        // C(r, k) * size^k, stepped from k = 0.
+        BigInteger weight = BigInteger.ONE;
+        BigInteger sum = BigInteger.ZERO;
+        for (int k = 0; k <= maxK; ++k)
+        {
+            if (k >= minK)
+            {
+                sum = sum.add(weight.multiply(n[j + 1][r - k]));
+                result[k - minK] = sum;
+            }
+            weight = weight.multiply(_sizes[j]).multiply(BigInteger.valueOf(r - k)).divide(BigInteger.valueOf(k + 1));
+        }
+        return result;
+    }
+
+    private final Alphabet _alphabet;
+    private final Alphabet _excluded;
+    private final int[][] _phonemes;
+    private final Alphabet _pronounceableSymbols;
+    private final CharSetType[] _types;
+    private final Alphabet[] _classes;
+    private final BigInteger[] _sizes;
+    private final int[] _minimums;
+    /** Sum of the minimums from each index onwards. */
+    private final int[] _restMinimum;
+    private final boolean _satisfiable;
+    private final AtomicReferenceArray<BigInteger[]> _cumulative;
+    private final AtomicReferenceArray<long[]> _smallCumulative;
+    private volatile BigInteger[][] _counts;
+
+    /** Split tables are kept for up to this many remaining characters. */
+    private static final int CACHED_LENGTH = 64;
+}
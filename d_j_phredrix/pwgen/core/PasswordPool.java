@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import d_j_phredrix.pwgen.core.Generator.Mode;
+
+/**
+ * Keeps a supply of ready-made passwords for the current {@link DataModel}
+ * configuration, so that handing one out is a single lock-free poll rather
+ * than a generation (and, for the first call, CSPRNG seeding).
+ * <p>
+ * A background daemon thread refills a {@link Ring} up to the high-water
+ * mark and parks until consumers draw it below the low-water mark. When the
+ * model changes, the pool, registered as a {@link DataModel.ChangeListener},
+ * swaps in a fresh ring for the new configuration; passwords made for the
+ * old one are wiped and never handed out. A configuration the producer
+ * fails on is counted in {@link Metrics#getProducerFailures()} and skipped
+ * until the next change; {@link #take()} then generates on the caller's
+ * thread and throws the error there.
+ */
+public class PasswordPool implements DataModel.ChangeListener, AutoCloseable {
+
+    /**
+     * One configuration and the ring holding passwords made for it.
+     * Replaced as a whole, so a producer that is still working on an old
+     * configuration can only ever fill the old, abandoned ring.
+     */
+    private static final class State {
+        State(DataModel.Snapshot d, int capacity)
+        {
+            version = d.getVersion();
+            mode = d.getMode();
+            policy = d.getPasswordPolicy();
+            minLength = d.getMinLength();
+            maxLength = d.getMaxLength();
+            PassphraseFormat f = null;
+            try
+            {
+                f = d.getPassphraseFormat();
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Every digit excluded; take() reports it when falling back.
+            }
+            format = f;
+            WordList w = null;
+            try
+            {
+                w = d.getWordList();
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Unreadable list; take() reports it when falling back.
+            }
+            words = w;
+            Template t = null;
+            try
+            {
+                t = d.getCompiledTemplate();
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Malformed pattern; take() reports it when falling back.
+            }
+            template = t;
+            snapshot = d;
+            randomSource = d.getRandomSource();
+            ring = new Ring<>(capacity);
+        }
+
+        boolean canProduce()
+        {
+            switch (mode)
+            {
+            case PASSPHRASE:
+                return words != null && format != null;
+            case PRONOUNCEABLE:
+                return minLength <= maxLength && policy.phonemes() != null;
+            case TEMPLATE:
+                return template != null;
+            default:
+                return minLength <= maxLength && policy.isSatisfiable() && policy.getMinLength() <= maxLength;
+            }
+        }
+
+        SecretBuffer create(Generator gen)
+        {
+            switch (mode)
+            {
+            case PASSPHRASE:
+                // Building the format again throws the reason it failed.
+                return gen.createPassphrase(words, format != null ? format : snapshot.getPassphraseFormat());
+            case PRONOUNCEABLE:
+                return gen.createPronounceable(policy, minLength, maxLength);
+            case TEMPLATE:
+                // Compiling again throws the reason a malformed one failed.
+                return gen.createSecret(template != null ? template : snapshot.getCompiledTemplate());
+            default:
+                return gen.createSecret(policy, minLength, maxLength);
+            }
+        }
+
+        final long version;
+        final Mode mode;
+        final PassphraseFormat format;
+        final WordList words;
+        final Template template;
+        final DataModel.Snapshot snapshot;
+        final PasswordPolicy policy;
+        final int minLength;
+        final int maxLength;
+        final String randomSource;
+        final Ring<SecretBuffer> ring;
+    }
+
+    /**
+     * Creates a pool that follows {@code data} and starts its producer.
+     */
+    public static PasswordPool create(DataModel data)
+    {
+        return create(data, DEFAULT_HIGH_WATER, DEFAULT_LOW_WATER);
+    }
+
+    /**
+     * @param data
+     * @param highWater
+     *            Number of passwords the producer keeps ready
+     * @param lowWater
+     *            Level below which consumers wake the producer
+     */
+    public static PasswordPool create(DataModel data, int highWater, int lowWater)
+    {
+        final PasswordPool result = new PasswordPool(data, highWater, lowWater);
+        data.addListener(result);
+        result._producer.start();
+        return result;
+    }
+
+    private PasswordPool(DataModel data, int highWater, int lowWater)
+    {
+        _data = data;
+        _highWater = highWater;
+        _lowWater = Math.min(lowWater, highWater);
+        _state = new State(data.snapshot(), highWater);
+        _producer = new Thread(this::produce, Messages.getString("PasswordPool.threadName")); //$NON-NLS-1$
+        _producer.setDaemon(true);
+    }
+
+    /**
+     * @return a password for the current configuration, generated on the
+     *         spot if the pool has run dry. The caller owns the buffer and
+     *         must close it.
+     */
+    public SecretBuffer take()
+    {
+        final State s = _state;
+        SecretBuffer result = s.ring.poll();
+        if (s.ring.size() < _lowWater)
+        {
+            LockSupport.unpark(_producer);
+        }
+        if (result == null)
+        {
+            result = generateDirectly(s);
+        }
+        Startup.firstPassword();
+        return result;
+    }
+
+    /**
+     * @return the number of passwords ready for the current configuration
+     */
+    public int available()
+    {
+        return _state.ring.size();
+    }
+
+    /**
+     * Synchronized so that, when several threads change the model at once,
+     * an older snapshot can never replace a newer one.
+     */
+    @Override
+    public synchronized void dataChanged(DataModel d, Item whatChanged, Object source)
+    {
+        final State old = _state;
+        final DataModel.Snapshot snapshot = d.snapshot();
+        if (snapshot.getVersion() <= old.version)
+        {
+            return;
+        }
+        _state = new State(snapshot, _highWater);
+        LockSupport.unpark(_producer);
+        discard(old);
+    }
+
+    @Override
+    public void exceptionOccurred(Exception ex, Object source)
+    {
+    }
+
+    /**
+     * Stops the producer and detaches from the model.
+     */
+    @Override
+    public void close()
+    {
+        _data.removeListener(this);
+        _closed = true;
+        LockSupport.unpark(_producer);
+        discard(_state);
+    }
+
+    private void produce()
+    {
+        Generator gen = null;
+        State failed = null;
+        while (!_closed)
+        {
+            final State s = _state;
+            if (s == failed || s.ring.size() >= _highWater || !s.canProduce())
+            {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            try
+            {
+                if (gen == null || !gen.getRandomSource().equals(s.randomSource))
+                {
+                    gen = new Generator(s.randomSource);
+                }
+                final SecretBuffer password = s.create(gen);
+                if (!s.ring.offer(password))
+                {
+                    password.close();
+                }
+            }
+            catch (RuntimeException ex)
+            {
+                // E.g. a saved random source that no longer exists. take()
+                // reports it to the caller when falling back; wait for the
+                // next settings rather than retrying these.
+                Metrics.global().producerFailed(ex);
+                failed = s;
+                gen = null;
+            }
+            if (_state != s || _closed)
+            {
+                // Invalidated meanwhile; make sure nothing is left behind in
+                // the abandoned ring.
+                discard(s);
+            }
+        }
+    }
+
+    /**
+     * Wipes whatever is left in an abandoned state's ring.
+     */
+    private static void discard(State s)
+    {
+        for (SecretBuffer b = s.ring.poll(); b != null; b = s.ring.poll())
+        {
+            b.close();
+        }
+    }
+
+    /**
+     * Generates and discards passwords with the generator {@link #take()}
+     * falls back on, so that its source is seeded and the generation path
+     * compiled before the first real request.
+     *
+     * @param passwords
+     * @throws IllegalArgumentException
+     *             if the current settings cannot produce a password
+     */
+    void warmUp(int passwords)
+    {
+        final State s = _state;
+        for (int ii = 0; ii < passwords; ++ii)
+        {
+            generateDirectly(s).close();
+        }
+    }
+
+    private synchronized SecretBuffer generateDirectly(State s)
+    {
+        if (_fallback == null || !_fallback.getRandomSource().equals(s.randomSource))
+        {
+            _fallback = new Generator(s.randomSource);
+        }
+        return s.create(_fallback);
+    }
+
+    private final DataModel _data;
+    private final int _highWater;
+    private final int _lowWater;
+    private final Thread _producer;
+    private volatile State _state;
+    private volatile boolean _closed;
+    private Generator _fallback;
+
+    private static final int DEFAULT_HIGH_WATER = 64;
+    private static final int DEFAULT_LOW_WATER = 16;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+}
@@ -17,8 +17,22 @@
 
 package d_j_phredrix.pwgen.core;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
+/**
+ * Access to the preference nodes the application stores its state in.
+ * <p>
+ * Writes can be handed to {@link #writeBehind(Object, Runnable)}, which
+ * runs them on a background thread once changes have settled and flushes
+ * the backing store once for all of them. Whatever is still queued when the
+ * JVM exits is written by a shutdown hook.
+ */
 public class Persistence {
 
     public Persistence(String pathName)
@@ -36,6 +50,78 @@ public class Persistence {
         return _prefs;
     }
 
+    /**
+     * Queues {@code write} to run on the background writer within
+     * {@value #WRITE_DELAY_MILLIS} ms. A later call with an equal
+     * {@code key} before then replaces it, so a burst of changes to the same
+     * state costs one write.
+     *
+     * @param key
+     *            Identifies the state being written
+     * @param write
+     *            Puts values into preference nodes; should not flush
+     */
+    public static void writeBehind(Object key, Runnable write)
+    {
+        if (_pending.put(key, write) == null)
+        {
+            WriteBehind.WRITER.schedule(Persistence::flushPending, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs every queued write now, on the calling thread, and flushes the
+     * backing store if there were any.
+     */
+    public static void flushPending()
+    {
+        synchronized (_pending)
+        {
+            boolean wrote = false;
+            for (Object key : _pending.keySet())
+            {
+                final Runnable write = _pending.remove(key);
+                if (write != null)
+                {
+                    write.run();
+                    wrote = true;
+                }
+            }
+            if (wrote)
+            {
+                try
+                {
+                    Preferences.userRoot().flush();
+                }
+                catch (BackingStoreException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Holder for the writer thread, so that it is only started once
+     * something is written.
+     */
+    private static final class WriteBehind {
+        private static ScheduledExecutorService start()
+        {
+            final ScheduledExecutorService result = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, Messages.getString("Persistence.threadName")); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(Persistence::flushPending));
+            return result;
+        }
+
+        static final ScheduledExecutorService WRITER = start();
+    }
+
     private Preferences _prefs = null;
 
+    private static final Map<Object, Runnable> _pending = new ConcurrentHashMap<>();
+    private static final long WRITE_DELAY_MILLIS = 500;
 }
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.Arrays;
+
+/**
+ * The phoneme table behind pronounceable passwords, after the one in the
+ * Unix pwgen. Elements are packed into primitive arrays, and for every state
+ * of the walk (what kind of element comes next, whether it starts a
+ * syllable group, whether the previous element was a vowel, whether only one
+ * character is left) the indices of the elements allowed in that state are
+ * precomputed. Choosing the next element is therefore a single uniform draw
+ * from a table, never a draw-and-reject loop.
+ */
+final class Phonemes {
+
+    static final int CONSONANT = 0x1;
+    static final int VOWEL = 0x2;
+    static final int DIPHTHONG = 0x4;
+    static final int NOT_FIRST = 0x8;
+
+    private Phonemes()
+    {
+    }
+
+    /**
+     * @param shouldBe
+     *            {@link #CONSONANT} or {@link #VOWEL}
+     * @param first
+     *            At the start of a group
+     * @param prevVowel
+     *            The previous element was a vowel
+     * @param oneLeft
+     *            Only one character of room remains
+     * @return the indices of the elements allowed next
+     */
+    static int[] candidates(int shouldBe, boolean first, boolean prevVowel, boolean oneLeft)
+    {
+        return candidates(ALL, shouldBe, first, prevVowel, oneLeft);
+    }
+
+    /**
+     * As {@link #candidates(int, boolean, boolean, boolean)}, from a table
+     * made by {@link #candidatesWithout(Alphabet)}.
+     */
+    static int[] candidates(int[][] table, int shouldBe, boolean first, boolean prevVowel, boolean oneLeft)
+    {
+        return table[state(shouldBe, first, prevVowel, oneLeft)];
+    }
+
+    /**
+     * @return a table of the candidates in every state that use none of
+     *         {@code excluded}, or null if that leaves some state without
+     *         any
+     */
+    static int[][] candidatesWithout(Alphabet excluded)
+    {
+        boolean any = false;
+        for (char c : CHARS)
+        {
+            any |= excluded.contains(c);
+        }
+        if (!any)
+        {
+            return ALL;
+        }
+        final int[][] result = buildCandidates(excluded);
+        for (int[] state : result)
+        {
+            if (state.length == 0)
+            {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    private static int state(int shouldBe, boolean first, boolean prevVowel, boolean oneLeft)
+    {
+        return (shouldBe == VOWEL ? 8 : 0) | (first ? 4 : 0) | (prevVowel ? 2 : 0) | (oneLeft ? 1 : 0);
+    }
+
+    /**
+     * @param excluded
+     *            Elements with any of these characters are left out; may be
+     *            null
+     */
+    private static int[][] buildCandidates(Alphabet excluded)
+    {
+        final int[][] result = new int[16][];
+        for (int shouldBe : new int[] { CONSONANT, VOWEL })
+        {
+            for (int bits = 0; bits < 8; ++bits)
+            {
+                final boolean first = (bits & 4) != 0;
+                final boolean prevVowel = (bits & 2) != 0;
+                final boolean oneLeft = (bits & 1) != 0;
+                int[] allowed = new int[FLAGS.length];
+                int count = 0;
+                for (int ii = 0; ii < FLAGS.length; ++ii)
+                {
+                    final int flags = FLAGS[ii];
+                    if ((flags & shouldBe) == 0
+                            || (first && (flags & NOT_FIRST) != 0)
+                            || (prevVowel && (flags & VOWEL) != 0 && (flags & DIPHTHONG) != 0)
+                            || (oneLeft && LENGTH[ii] > 1)
+                            || (excluded != null && usesAny(ii, excluded)))
+                    {
+                        continue;
+                    }
+                    allowed[count++] = ii;
+                }
+                result[state(shouldBe, first, prevVowel, oneLeft)] = Arrays.copyOf(allowed, count);
+            }
+        }
+        return result;
+    }
+
+    private static boolean usesAny(int element, Alphabet excluded)
+    {
+        for (int ii = START[element]; ii < START[element] + LENGTH[element]; ++ii)
+        {
+            if (excluded.contains(CHARS[ii]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** All elements, back to back: a ae ah ai b c ch d e ee ei f g gh ... */
+    static final char[] CHARS = "aaeahaibcchdeeeeifgghhiiejklmnngoohoopphqursshtthuvwxyz".toCharArray(); //$NON-NLS-1$
+
+    static final int[] LENGTH = {
+            1, 2, 2, 2, 1, 1, 2, 1, 1, 2, 2, 1, 1,
+            2, 1, 1, 2, 1, 1, 1, 1, 1, 2, 1, 2, 2, 1, 2,
+            2, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 1 };
+
+    static final int[] FLAGS = {
+            VOWEL, VOWEL | DIPHTHONG, VOWEL | DIPHTHONG, VOWEL | DIPHTHONG, // a ae ah ai
+            CONSONANT, CONSONANT, CONSONANT | DIPHTHONG, CONSONANT, // b c ch d
+            VOWEL, VOWEL | DIPHTHONG, VOWEL | DIPHTHONG, CONSONANT, CONSONANT, // e ee ei f g
+            CONSONANT | DIPHTHONG | NOT_FIRST, CONSONANT, VOWEL, VOWEL | DIPHTHONG, // gh h i ie
+            CONSONANT, CONSONANT, CONSONANT, CONSONANT, CONSONANT, // j k l m n
+            CONSONANT | DIPHTHONG | NOT_FIRST, VOWEL, VOWEL | DIPHTHONG, VOWEL | DIPHTHONG, // ng o oh oo
+            CONSONANT, CONSONANT | DIPHTHONG, CONSONANT | DIPHTHONG, CONSONANT, CONSONANT, // p ph qu r s
+            CONSONANT | DIPHTHONG, CONSONANT, CONSONANT | DIPHTHONG, VOWEL, // sh t th u
+            CONSONANT, CONSONANT, CONSONANT, CONSONANT, CONSONANT }; // v w x y z
+
+    /** Offset of each element in {@link #CHARS}. */
+    static final int[] START = new int[LENGTH.length];
+
+    static
+    {
+        for (int ii = 1; ii < LENGTH.length; ++ii)
+        {
+            START[ii] = START[ii - 1] + LENGTH[ii - 1];
+        }
+    }
+
+    /** Candidates with every element allowed. */
+    static final int[][] ALL = buildCandidates(null);
+}
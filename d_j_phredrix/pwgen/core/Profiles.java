@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Named sets of settings, read from preferences once and then kept in
+ * memory as {@link DataModel.Snapshot}s. Switching a model to a profile is
+ * a lookup and a single {@link DataModel#apply(DataModel.Snapshot, Object)};
+ * changes are written back through
+ * {@link Persistence#writeBehind(Object, Runnable)}.
+ * <p>
+ * Thread safe.
+ */
+public final class Profiles {
+
+    /**
+     * Reads every stored profile.
+     */
+    public static Profiles load()
+    {
+        final Profiles result = new Profiles();
+        final Preferences root = root();
+        try
+        {
+            for (String name : root.childrenNames())
+            {
+                final DataModel.Snapshot s = DataModel.read(root.node(name), DataModel.create().snapshot());
+                if (s != null)
+                {
+                    result._profiles.put(name, s);
+                }
+            }
+        }
+        catch (BackingStoreException e)
+        {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    private Profiles()
+    {
+    }
+
+    /**
+     * @return the profile names, sorted
+     */
+    public Set<String> getNames()
+    {
+        return new TreeSet<>(_profiles.keySet());
+    }
+
+    /**
+     * @return the profile, or null if there is none by that name
+     */
+    public DataModel.Snapshot get(String name)
+    {
+        return _profiles.get(name);
+    }
+
+    /**
+     * Stores {@code settings} under {@code name}, replacing any profile of
+     * that name.
+     */
+    public void put(String name, DataModel.Snapshot settings)
+    {
+        if (name.isEmpty() || name.length() > Preferences.MAX_NAME_LENGTH || name.indexOf('/') >= 0)
+        {
+            throw new IllegalArgumentException(Messages.getString("Profiles.badName") + name); //$NON-NLS-1$
+        }
+        _profiles.put(name, settings);
+        Persistence.writeBehind(key(name), () -> DataModel.write(root().node(name), settings));
+    }
+
+    public void remove(String name)
+    {
+        if (_profiles.remove(name) != null)
+        {
+            Persistence.writeBehind(key(name), () -> {
+                try
+                {
+                    root().node(name).removeNode();
+                }
+                catch (BackingStoreException e)
+                {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Makes {@code data} use the named profile.
+     *
+     * @return false if there is no such profile
+     */
+    public boolean apply(String name, DataModel data, Object source)
+    {
+        final DataModel.Snapshot s = _profiles.get(name);
+        if (s == null)
+        {
+            return false;
+        }
+        data.apply(s, source);
+        return true;
+    }
+
+    private static Preferences root()
+    {
+        return new Persistence(Profiles.class).prefs();
+    }
+
+    /**
+     * Write-behind key, so that saving and removing the same profile
+     * coalesce with each other but not with other profiles.
+     */
+    private static String key(String name)
+    {
+        return Profiles.class.getName() + '/' + name;
+    }
+
+    private final Map<String, DataModel.Snapshot> _profiles = new ConcurrentHashMap<>();
+}
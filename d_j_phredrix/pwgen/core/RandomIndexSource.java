@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+
+/**
+ * Exactly uniform random indices drawn from a bit reservoir.
+ * <p>
+ * Random bytes are fetched from the {@link RandomSource} in large blocks and consumed a few
+ * bits at a time. For each bound the source picks the width {@code m} that
+ * wastes the fewest bits, rejects values at or above the largest multiple of
+ * the bound below {@code 2^m} and reduces the rest modulo the bound, so every
+ * index is equally likely. Picking one of 62 symbols costs about 6.2 bits
+ * rather than the 64 bits of a {@code nextDouble()}.
+ * <p>
+ * Not thread safe; give each thread its own instance.
+ */
+public class RandomIndexSource {
+
+    public RandomIndexSource(RandomSource rng)
+    {
+        this(rng, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param rng
+     * @param blockSize
+     *            Number of bytes fetched from {@code rng} at a time; rounded
+     *            up to a multiple of 8
+     */
+    public RandomIndexSource(RandomSource rng, int blockSize)
+    {
+        _rng = rng;
+        _block = new byte[Math.max(Long.BYTES, (blockSize + Long.BYTES - 1) & ~(Long.BYTES - 1))];
+        _blockPos = _block.length;
+    }
+
+    /**
+     * @param bound
+     *            Must be positive
+     * @return a uniformly distributed value in {@code [0, bound)}
+     */
+    public int nextInt(int bound)
+    {
+        if (bound <= 1)
+        {
+            if (bound == 1)
+            {
+                return 0;
+            }
+            throw new IllegalArgumentException(Messages.getString("RandomIndexSource.badBound") + bound); //$NON-NLS-1$
+        }
+        final int width;
+        final int limit;
+        if (bound < TABLE_SIZE)
+        {
+            width = WIDTHS[bound];
+            limit = LIMITS[bound];
+        }
+        else
+        {
+            if (bound != _bound)
+            {
+                _width = bestWidth(bound);
+                _limit = limit(bound, _width);
+                _bound = bound;
+            }
+            width = _width;
+            limit = _limit;
+        }
+        int value;
+        do
+        {
+            value = nextBits(width);
+        }
+        while (value >= limit);
+        return value % bound;
+    }
+
+    /**
+     * As {@link #nextInt(int)}, for bounds too large for an int. Draws just
+     * enough bits to cover the bound and rejects values at or above it.
+     *
+     * @param bound
+     *            Must be positive
+     * @return a uniformly distributed value in {@code [0, bound)}
+     */
+    public BigInteger nextBigInteger(BigInteger bound)
+    {
+        if (bound.signum() <= 0)
+        {
+            throw new IllegalArgumentException(Messages.getString("RandomIndexSource.badBound") + bound); //$NON-NLS-1$
+        }
+        final int width = bound.subtract(BigInteger.ONE).bitLength();
+        final byte[] bytes = new byte[(width + 7) / 8];
+        BigInteger value;
+        do
+        {
+            // Big-endian, with the top byte holding whatever bits are left.
+            for (int ii = bytes.length - 1; ii > 0; --ii)
+            {
+                bytes[ii] = (byte) nextBits(8);
+            }
+            if (bytes.length > 0)
+            {
+                bytes[0] = (byte) nextBits(width - 8 * (bytes.length - 1));
+            }
+            value = new BigInteger(1, bytes);
+        }
+        while (value.compareTo(bound) >= 0);
+        return value;
+    }
+
+    /**
+     * As {@link #nextBigInteger(BigInteger)} without allocating, for bounds
+     * that fit in a long. Draws the same bits in the same order, so either
+     * method returns the same value from the same stream.
+     *
+     * @param bound
+     *            Must be positive
+     * @return a uniformly distributed value in {@code [0, bound)}
+     */
+    public long nextLong(long bound)
+    {
+        if (bound <= 0)
+        {
+            throw new IllegalArgumentException(Messages.getString("RandomIndexSource.badBound") + bound); //$NON-NLS-1$
+        }
+        final int width = Long.SIZE - Long.numberOfLeadingZeros(bound - 1);
+        if (width == 0)
+        {
+            return 0;
+        }
+        final int top = (width - 1) / 8 * 8;
+        long value;
+        do
+        {
+            // Low bytes first, then the top one with whatever bits are left.
+            value = 0;
+            for (int shift = 0; shift < top; shift += 8)
+            {
+                value |= (long) nextBits(8) << shift;
+            }
+            value |= (long) nextBits(width - top) << top;
+        }
+        while (value >= bound);
+        return value;
+    }
+
+    /**
+     * @return the number of bytes fetched from the underlying CSPRNG so far
+     */
+    public long getBytesConsumed()
+    {
+        return _bytesConsumed;
+    }
+
+    /**
+     * Fills {@code bytes} straight from the source, bypassing the reservoir,
+     * for callers that consume whole bytes; see {@link SymbolMapper}.
+     */
+    void nextBytes(byte[] bytes)
+    {
+        _rng.nextBytes(bytes);
+        _bytesConsumed += bytes.length;
+        Metrics.global().randomBytesConsumed(bytes.length);
+    }
+
+    /**
+     * @return the bit width with the lowest expected cost per accepted value
+     */
+    private static int bestWidth(int bound)
+    {
+        final int minWidth = 32 - Integer.numberOfLeadingZeros(bound - 1);
+        int result = minWidth;
+        double bestCost = Double.MAX_VALUE;
+        for (int width = minWidth; width <= Math.min(MAX_WIDTH, minWidth + 8); ++width)
+        {
+            final double cost = (double) width * (1L << width) / limit(bound, width);
+            if (cost < bestCost)
+            {
+                bestCost = cost;
+                result = width;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the largest multiple of {@code bound} not above
+     *         {@code 2^width}; values at or above it are rejected
+     */
+    private static int limit(int bound, int width)
+    {
+        final long range = 1L << width;
+        return (int) (range - range % bound);
+    }
+
+    private int nextBits(int n)
+    {
+        final int mask = (1 << n) - 1;
+        if (_bitCount >= n)
+        {
+            final int result = (int) _bits & mask;
+            _bits >>>= n;
+            _bitCount -= n;
+            return result;
+        }
+        // Take what is left in the reservoir and top up from the next word.
+        final int have = _bitCount;
+        final long word = nextLong();
+        final int result = ((int) _bits | ((int) word << have)) & mask;
+        _bits = word >>> (n - have);
+        _bitCount = 64 - (n - have);
+        return result;
+    }
+
+    private long nextLong()
+    {
+        if (_blockPos == _block.length)
+        {
+            _rng.nextBytes(_block);
+            _bytesConsumed += _block.length;
+            Metrics.global().randomBytesConsumed(_block.length);
+            _blockPos = 0;
+        }
+        final long result = (long) LONG_VIEW.get(_block, _blockPos);
+        _blockPos += Long.BYTES;
+        return result;
+    }
+
+    private final RandomSource _rng;
+    private final byte[] _block;
+    private int _blockPos;
+    private long _bits;
+    private int _bitCount;
+    private int _bound;
+    private int _width;
+    private int _limit;
+    private long _bytesConsumed;
+
+    private static final int DEFAULT_BLOCK_SIZE = 512;
+    /**
+     * Widths and limits for small bounds are computed once, since callers
+     * typically alternate between a few of them (length, alphabet size).
+     */
+    private static final int TABLE_SIZE = 1024;
+    private static final int[] WIDTHS = new int[TABLE_SIZE];
+    private static final int[] LIMITS = new int[TABLE_SIZE];
+    private static final int MAX_WIDTH = 31;
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    static
+    {
+        for (int bound = 2; bound < TABLE_SIZE; ++bound)
+        {
+            WIDTHS[bound] = bestWidth(bound);
+            LIMITS[bound] = limit(bound, WIDTHS[bound]);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Source of the random bytes that passwords are built from. Implementations
+ * are selected by name through {@link #forName(String)}:
+ * <ul>
+ * <li>{@value #DEFAULT}: the platform default {@code SecureRandom}</li>
+ * <li>{@value #CHACHA20}: {@link ChaCha20RandomSource}, the fastest secure
+ * source for bulk output</li>
+ * <li>{@value #DRBG}, {@value #NATIVE_NON_BLOCKING}, {@value #SHA1PRNG}, or
+ * any other {@code SecureRandom} algorithm name</li>
+ * <li>{@value #SEEDED}, optionally followed by {@code :seed}: a deterministic,
+ * <em>insecure</em> source for tests</li>
+ * <li>{@value #TEST_DATA}, optionally followed by {@code :seed}: a
+ * deterministic, <em>insecure</em> {@code L64X128MixRandom} for generating
+ * large volumes of reproducible test data</li>
+ * </ul>
+ * Instances need not be thread safe.
+ */
+public interface RandomSource {
+
+    String DEFAULT = "default"; //$NON-NLS-1$
+    String DRBG = "DRBG"; //$NON-NLS-1$
+    String NATIVE_NON_BLOCKING = "NativePRNGNonBlocking"; //$NON-NLS-1$
+    String SHA1PRNG = "SHA1PRNG"; //$NON-NLS-1$
+    String SEEDED = "seeded"; //$NON-NLS-1$
+    String CHACHA20 = "ChaCha20"; //$NON-NLS-1$
+    String TEST_DATA = "testdata"; //$NON-NLS-1$
+
+    /**
+     * Fills {@code bytes} with random data.
+     */
+    void nextBytes(byte[] bytes);
+
+    /**
+     * @return the name this source was created with
+     */
+    String getName();
+
+    /**
+     * @return true if this source's bytes are determined by where it came
+     *         from: its name for a source from {@link #forName(String)}, the
+     *         parent's state for one from {@link #split()}. Such a source
+     *         must never be used for real passwords.
+     */
+    default boolean isReproducible()
+    {
+        return false;
+    }
+
+    /**
+     * Splits off a new source whose stream is statistically independent of
+     * this one's and determined by this source's state, so that a
+     * reproducible source can feed several workers and still give the same
+     * result however the work is divided.
+     *
+     * @return a new source reporting this one's name, which says what kind
+     *         of source it is; {@link #forName(String)} with that name gives
+     *         the parent's stream, not this one
+     * @throws UnsupportedOperationException
+     *             unless {@link #isReproducible()}
+     */
+    default RandomSource split()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param name
+     * @return a new source
+     * @throws IllegalArgumentException
+     *             if no source of that name is available on this platform
+     */
+    static RandomSource forName(String name)
+    {
+        if (name.equals(SEEDED) || name.startsWith(SEEDED + ':'))
+        {
+            return new SeededRandomSource(name);
+        }
+        if (name.equals(TEST_DATA) || name.startsWith(TEST_DATA + ':'))
+        {
+            return SeededRandomSource.testData(name);
+        }
+        if (name.equals(CHACHA20))
+        {
+            return new ChaCha20RandomSource();
+        }
+        return new SecureRandomSource(name);
+    }
+
+    /**
+     * @return the names of the sources that can be created on this platform
+     */
+    static String[] availableNames()
+    {
+        List<String> result = new ArrayList<>();
+        result.add(DEFAULT);
+        result.add(CHACHA20);
+        for (String name : new String[] { DRBG, NATIVE_NON_BLOCKING, SHA1PRNG })
+        {
+            if (SecureRandomSource.isAvailable(name))
+            {
+                result.add(name);
+            }
+        }
+        result.add(SEEDED);
+        result.add(TEST_DATA);
+        return result.toArray(new String[result.size()]);
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer, multi-consumer queue on a ring of
+ * sequenced slots (D. Vyukov's design). Producers and consumers each claim
+ * a slot with one CAS; the slot's sequence number tells whether it is ready
+ * to be written or read.
+ */
+final class Ring<T> {
+
+    /**
+     * @param capacity
+     *            Rounded up to a power of two
+     */
+    Ring(int capacity)
+    {
+        final int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        _mask = size - 1;
+        _slots = new AtomicReferenceArray<>(size);
+        _sequences = new AtomicLongArray(size);
+        for (int ii = 0; ii < size; ++ii)
+        {
+            _sequences.set(ii, ii);
+        }
+    }
+
+    /**
+     * @return false if the ring is full
+     */
+    boolean offer(T value)
+    {
+        long pos = _tail.get();
+        for (;;)
+        {
+            final int index = (int) pos & _mask;
+            final long diff = _sequences.get(index) - pos;
+            if (diff == 0)
+            {
+                if (_tail.compareAndSet(pos, pos + 1))
+                {
+                    _slots.set(index, value);
+                    _sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = _tail.get();
+            }
+            else if (diff < 0)
+            {
+                return false;
+            }
+            else
+            {
+                pos = _tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return the oldest element, or null if the ring is empty
+     */
+    T poll()
+    {
+        long pos = _head.get();
+        for (;;)
+        {
+            final int index = (int) pos & _mask;
+            final long diff = _sequences.get(index) - (pos + 1);
+            if (diff == 0)
+            {
+                if (_head.compareAndSet(pos, pos + 1))
+                {
+                    final T result = _slots.getAndSet(index, null);
+                    _sequences.set(index, pos + _mask + 1);
+                    return result;
+                }
+                pos = _head.get();
+            }
+            else if (diff < 0)
+            {
+                return null;
+            }
+            else
+            {
+                pos = _head.get();
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements, which may already be stale when
+     *         concurrent operations are in progress
+     */
+    int size()
+    {
+        return (int) Math.max(0, _tail.get() - _head.get());
+    }
+
+    int capacity()
+    {
+        return _mask + 1;
+    }
+
+    private final int _mask;
+    private final AtomicReferenceArray<T> _slots;
+    private final AtomicLongArray _sequences;
+    private final AtomicLong _head = new AtomicLong();
+    private final AtomicLong _tail = new AtomicLong();
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.Arrays;
+
+/**
+ * A password held in a private {@code char[]} that is overwritten on
+ * {@link #close()}. Unlike a {@code String}, the contents do not linger on
+ * the heap until the garbage collector gets round to them. Use with
+ * try-with-resources; {@link #toString()} deliberately does not reveal the
+ * contents.
+ */
+public final class SecretBuffer implements AutoCloseable {
+
+    /**
+     * @param capacity
+     *            Maximum number of characters the buffer will hold
+     */
+    public SecretBuffer(int capacity)
+    {
+        _chars = new char[capacity];
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public int length()
+    {
+        checkOpen();
+        return _length;
+    }
+
+    public int capacity()
+    {
+        return _chars.length;
+    }
+
+    public char charAt(int index)
+    {
+        checkOpen();
+        if (index < 0 || index >= _length)
+        {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return _chars[index];
+    }
+
+    /**
+     * Copies characters {@code [srcBegin, srcEnd)} into {@code dst}, as
+     * {@link String#getChars(int, int, char[], int)}.
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin)
+    {
+        checkOpen();
+        if (srcBegin < 0 || srcEnd > _length || srcBegin > srcEnd)
+        {
+            throw new IndexOutOfBoundsException(srcEnd);
+        }
+        System.arraycopy(_chars, srcBegin, dst, dstBegin, srcEnd - srcBegin);
+    }
+
+    /**
+     * Copies the contents into an immutable string, for APIs that accept
+     * nothing else. The copy is outside this buffer's control and cannot be
+     * wiped.
+     */
+    public String reveal()
+    {
+        checkOpen();
+        return new String(_chars, 0, _length);
+    }
+
+    public boolean isClosed()
+    {
+        return _length < 0;
+    }
+
+    /**
+     * Zeroes the contents. Reading the buffer afterwards throws
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void close()
+    {
+        Arrays.fill(_chars, '\0');
+        _length = -1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SecretBuffer[" + Math.max(0, _length) + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private void checkOpen()
+    {
+        if (_length < 0)
+        {
+            throw new IllegalStateException(Messages.getString("SecretBuffer.closed")); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * The backing array, for {@link Generator} to write into.
+     */
+    char[] chars()
+    {
+        return _chars;
+    }
+
+    void setLength(int length)
+    {
+        _length = length;
+    }
+
+    private final char[] _chars;
+    private int _length;
+}
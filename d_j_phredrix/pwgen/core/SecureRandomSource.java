@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * {@link RandomSource} backed by a JCA {@link SecureRandom}.
+ */
+public class SecureRandomSource implements RandomSource {
+
+    /**
+     * @param algorithm
+     *            A {@code SecureRandom} algorithm name, or
+     *            {@value RandomSource#DEFAULT} for the platform default
+     */
+    public SecureRandomSource(String algorithm)
+    {
+        this(algorithm, create(algorithm));
+    }
+
+    /**
+     * Wraps an existing instance.
+     */
+    public SecureRandomSource(SecureRandom rng)
+    {
+        this(rng.getAlgorithm(), rng);
+    }
+
+    private SecureRandomSource(String name, SecureRandom rng)
+    {
+        _name = name;
+        _rng = rng;
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes)
+    {
+        _rng.nextBytes(bytes);
+    }
+
+    @Override
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * @return true if this platform provides the {@code SecureRandom}
+     *         algorithm {@code algorithm}
+     */
+    static boolean isAvailable(String algorithm)
+    {
+        try
+        {
+            SecureRandom.getInstance(algorithm);
+            return true;
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Not offered by any installed provider.
+            return false;
+        }
+    }
+
+    private static SecureRandom create(String algorithm)
+    {
+        if (algorithm.equals(DEFAULT))
+        {
+            return new SecureRandom();
+        }
+        try
+        {
+            return SecureRandom.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalArgumentException(Messages.getString("RandomSource.unknownSource") + algorithm, e); //$NON-NLS-1$
+        }
+    }
+
+    private final String _name;
+    private final SecureRandom _rng;
+}
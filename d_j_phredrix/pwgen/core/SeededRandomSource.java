@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Deterministic {@link RandomSource} for tests and test data: the same seed
+ * always yields the same bytes. <b>Not</b> cryptographically secure; never
+ * use it for real passwords.
+ * <p>
+ * {@value RandomSource#SEEDED} runs on {@link SplittableRandom} and
+ * {@value RandomSource#TEST_DATA} on {@code L64X128MixRandom}, which has a
+ * far longer period and splits into substreams that stay independent
+ * however many are taken, as a run of billions of passwords needs.
+ */
+public class SeededRandomSource implements RandomSource {
+
+    public SeededRandomSource(long seed)
+    {
+        this(SEEDED + ':' + seed, new SplittableRandom(seed));
+    }
+
+    /**
+     * @param name
+     *            {@value RandomSource#SEEDED} (seed 0) or
+     *            {@value RandomSource#SEEDED}{@code :seed}
+     */
+    SeededRandomSource(String name)
+    {
+        this(parseSeed(SEEDED, name));
+    }
+
+    private SeededRandomSource(String name, RandomGenerator.SplittableGenerator rng)
+    {
+        _name = name;
+        _rng = rng;
+    }
+
+    /**
+     * @param name
+     *            {@value RandomSource#TEST_DATA} (seed 0) or
+     *            {@value RandomSource#TEST_DATA}{@code :seed}
+     * @return an {@code L64X128MixRandom} source
+     */
+    static SeededRandomSource testData(String name)
+    {
+        final long seed = parseSeed(TEST_DATA, name);
+        final RandomGeneratorFactory<RandomGenerator.SplittableGenerator> factory = RandomGeneratorFactory
+                .of(TEST_DATA_ALGORITHM);
+        return new SeededRandomSource(TEST_DATA + ':' + seed, factory.create(seed));
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes)
+    {
+        _rng.nextBytes(bytes);
+    }
+
+    @Override
+    public String getName()
+    {
+        return _name;
+    }
+
+    @Override
+    public boolean isReproducible()
+    {
+        return true;
+    }
+
+    @Override
+    public RandomSource split()
+    {
+        return new SeededRandomSource(_name, _rng.split());
+    }
+
+    private static long parseSeed(String prefix, String name)
+    {
+        if (name.length() == prefix.length())
+        {
+            return 0;
+        }
+        try
+        {
+            return Long.parseLong(name.substring(prefix.length() + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(Messages.getString("RandomSource.badSeed") + name, e); //$NON-NLS-1$
+        }
+    }
+
+    private final String _name;
+    private final RandomGenerator.SplittableGenerator _rng;
+
+    private static final String TEST_DATA_ALGORITHM = "L64X128MixRandom"; //$NON-NLS-1$
+}
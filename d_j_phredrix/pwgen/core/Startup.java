@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup pipeline. {@link #begin(String...)}, called first thing in
+ * {@code main}, moves the slow parts of a cold start off the critical path:
+ * one background thread loads the saved settings, starts the
+ * {@link PasswordPool} that will serve them, seeds the CSPRNG of the
+ * generator the pool falls back on, warms the generation path up, and
+ * registers {@link Metrics}; another loads the given UI classes ahead of the
+ * event dispatch thread. The UI picks the settings up with {@link #model()}
+ * and the pool with {@link #pool()}.
+ * <p>
+ * Startup is measured as time to first password: from JVM start until
+ * {@link #firstPassword()} is first called, which happens when a password
+ * is first handed out. With {@code -Dpwgen.startup.report=true} the UI
+ * produces a password as soon as its window is up and the timings are
+ * printed to stderr; with {@code =exit} the JVM then exits, which makes the
+ * run scriptable.
+ * <p>
+ * AppCDS recipe (JDK 13 or later). Record the classes a start loads into an
+ * archive once, after each build:
+ *
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=pwgen.jsa -Dpwgen.startup.report=exit \
+ *      -cp pwgen.jar d_j_phredrix.pwgen.ui.MainFrame
+ * </pre>
+ *
+ * and start from it, comparing the reported times with and without the
+ * archive to track regressions:
+ *
+ * <pre>
+ * java -XX:SharedArchiveFile=pwgen.jsa -Dpwgen.startup.report=exit \
+ *      -cp pwgen.jar d_j_phredrix.pwgen.ui.MainFrame
+ * </pre>
+ *
+ * Without a display, the same works with
+ * {@code d_j_phredrix.pwgen.cli.CommandLine -n 1}, which reports after its
+ * first batch. The archive is only valid for the same JDK and class path.
+ */
+public final class Startup {
+
+    /**
+     * Starts the background work. Safe to call more than once; only the
+     * first call has an effect.
+     *
+     * @param preload
+     *            Names of classes the UI is about to need
+     */
+    public static synchronized void begin(String... preload)
+    {
+        if (_model != null)
+        {
+            return;
+        }
+        _begun = System.nanoTime();
+        _model = new CompletableFuture<>();
+        _pool = new CompletableFuture<>();
+        final Thread warm = new Thread(Startup::warmUp, Messages.getString("Startup.threadName")); //$NON-NLS-1$
+        warm.setDaemon(true);
+        warm.start();
+        if (preload.length > 0)
+        {
+            final Thread load = new Thread(() -> preload(preload), Messages.getString("Startup.threadName")); //$NON-NLS-1$
+            load.setDaemon(true);
+            load.start();
+        }
+    }
+
+    /**
+     * @return the saved settings, waiting for the background load if it is
+     *         still running; loaded on the spot if {@link #begin(String...)}
+     *         was never called
+     */
+    public static DataModel model()
+    {
+        final CompletableFuture<DataModel> model;
+        synchronized (Startup.class)
+        {
+            model = _model;
+        }
+        return model == null ? DataModel.loadFromPrefs() : model.join();
+    }
+
+    /**
+     * @return the pool following {@link #model()}, already seeded and warm
+     *         if the background work has finished; created on the spot if
+     *         {@link #begin(String...)} was never called or could not
+     *         create it
+     */
+    public static PasswordPool pool()
+    {
+        final CompletableFuture<PasswordPool> pool;
+        synchronized (Startup.class)
+        {
+            pool = _pool;
+        }
+        final PasswordPool result = pool == null ? null : pool.join();
+        return result == null ? PasswordPool.create(model()) : result;
+    }
+
+    /**
+     * Marks the main window as shown.
+     */
+    public static void windowShown()
+    {
+        _windowShown = System.nanoTime();
+    }
+
+    /**
+     * Records the first password handed out. Cheap after the first call.
+     */
+    public static void firstPassword()
+    {
+        if (_firstPassword != 0)
+        {
+            return;
+        }
+        synchronized (Startup.class)
+        {
+            if (_firstPassword != 0)
+            {
+                return;
+            }
+            _firstPassword = System.nanoTime();
+            _timeToFirstPassword = sinceJvmStart();
+        }
+        final String report = System.getProperty(REPORT_PROPERTY);
+        if (report != null)
+        {
+            System.err.println(getReport());
+            if (report.equals(REPORT_AND_EXIT))
+            {
+                System.exit(0);
+            }
+        }
+    }
+
+    /**
+     * @return true if the UI should produce a password unprompted, so that
+     *         {@link #firstPassword()} is reached without user input
+     */
+    public static boolean isReporting()
+    {
+        return System.getProperty(REPORT_PROPERTY) != null;
+    }
+
+    /**
+     * @return milliseconds from JVM start to the first password, or -1 if
+     *         there has been none yet
+     */
+    public static long getTimeToFirstPasswordMillis()
+    {
+        return _timeToFirstPassword;
+    }
+
+    /**
+     * @return the startup timings so far, for logging
+     */
+    public static String getReport()
+    {
+        return Messages.getString("Startup.report") //$NON-NLS-1$
+                + String.format(Messages.getString("Startup.reportFormat"), //$NON-NLS-1$
+                        _timeToFirstPassword, millisSinceBegin(_seeded), millisSinceBegin(_warmed),
+                        millisSinceBegin(_windowShown), millisSinceBegin(_firstPassword));
+    }
+
+    private Startup()
+    {
+    }
+
+    private static void warmUp()
+    {
+        DataModel model;
+        try
+        {
+            model = DataModel.loadFromPrefs();
+        }
+        catch (RuntimeException ex)
+        {
+            // Unreadable preferences; start from the defaults, as the UI would.
+            model = DataModel.create();
+        }
+        _model.complete(model);
+        PasswordPool pool = null;
+        try
+        {
+            // The producer seeds its own generator as it starts filling.
+            pool = PasswordPool.create(model);
+        }
+        catch (RuntimeException ex)
+        {
+            // pool() tries again on the caller's thread and reports it.
+        }
+        _pool.complete(pool);
+        try
+        {
+            if (pool != null)
+            {
+                // Only the seeding and the compiled code are wanted.
+                pool.warmUp(1);
+                _seeded = System.nanoTime();
+                pool.warmUp(WARM_UP_PASSWORDS - 1);
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            // Settings that cannot produce anything, or a saved random
+            // source that no longer exists; the UI reports them.
+        }
+        _warmed = System.nanoTime();
+        Metrics.registerMBean();
+    }
+
+    private static void preload(String[] classNames)
+    {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        for (String name : classNames)
+        {
+            try
+            {
+                Class.forName(name, false, loader);
+            }
+            catch (ClassNotFoundException | LinkageError ex)
+            {
+                // Only an optimization; the EDT will load it or fail itself.
+            }
+        }
+    }
+
+    private static long sinceJvmStart()
+    {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis()).orElse(-1L);
+    }
+
+    private static long millisSinceBegin(long nanos)
+    {
+        return nanos == 0 || _begun == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos - _begun);
+    }
+
+    private static CompletableFuture<DataModel> _model;
+    private static CompletableFuture<PasswordPool> _pool;
+    private static volatile long _begun;
+    private static volatile long _seeded;
+    private static volatile long _warmed;
+    private static volatile long _windowShown;
+    private static volatile long _firstPassword;
+    private static volatile long _timeToFirstPassword = -1;
+
+    /** Enough calls for the hot loops to be compiled by C1. */
+    private static final int WARM_UP_PASSWORDS = 2000;
+    private static final String REPORT_PROPERTY = "pwgen.startup.report"; //$NON-NLS-1$
+    private static final String REPORT_AND_EXIT = "exit"; //$NON-NLS-1$
+}
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+/**
+ * Maps random bytes to password characters many at a time, for the batch
+ * paths. Each byte {@code b} is reduced to an index with Lemire's
+ * multiply-shift: {@code (b * n) >>> 8} for an alphabet of {@code n},
+ * rejected when the low byte of the product is below {@code 256 % n}, which
+ * leaves every index exactly equally likely. The loop has no data-dependent
+ * branches: every byte writes a character, and the output position only
+ * moves on when the byte is accepted.
+ * <p>
+ * Bytes are consumed strictly in order and none is ever discarded, so the
+ * output depends only on the random stream. {@code VectorSymbolMapper}, in
+ * the optional {@code vector} source root, is used when it was compiled in
+ * and the JVM runs with {@code --add-modules jdk.incubator.vector} (unless
+ * {@code -Dpwgen.vector=false}). It maps a whole vector of bytes at a time
+ * but produces exactly the same characters, which keeps seeded output
+ * identical with and without the module.
+ * <p>
+ * Instances hold scratch space and are not thread safe; each
+ * {@link Generator} has its own.
+ */
+class SymbolMapper {
+
+    /**
+     * @return a new mapper, vectorized if the JVM allows
+     */
+    static SymbolMapper create()
+    {
+        if (FACTORY != null)
+        {
+            try
+            {
+                return (SymbolMapper) FACTORY.invoke();
+            }
+            catch (Throwable ex)
+            {
+                // Fall through to the scalar mapper.
+            }
+        }
+        return new SymbolMapper();
+    }
+
+    /**
+     * @return true if {@link #create()} returns vectorized mappers
+     */
+    static boolean isVectorized()
+    {
+        return FACTORY != null;
+    }
+
+    /**
+     * @return true if {@link #fill} can take {@code alphabet}; otherwise the
+     *         caller uses its scalar loop
+     */
+    boolean supports(char[] alphabet)
+    {
+        return alphabet.length > 0 && alphabet.length <= TABLE_SIZE;
+    }
+
+    /**
+     * Fills {@code dest[from .. to)} with symbols drawn uniformly from
+     * {@code alphabet}, using raw bytes from {@code random}.
+     */
+    void fill(char[] alphabet, char[] dest, int from, int to, RandomIndexSource random)
+    {
+        int pos = from;
+        while (pos < to)
+        {
+            if (_randomPos == RANDOM_BLOCK)
+            {
+                refill(random);
+            }
+            pos = map(alphabet, dest, pos, to, RANDOM_BLOCK);
+        }
+        wipeUsed();
+    }
+
+    /**
+     * Writes {@code count} passwords following {@code template} back to back
+     * from {@code dest[from]} on, mapping bytes one at a time as
+     * {@link #fill} does. The whole batch runs in one method rather than a
+     * call per instruction, as each instruction writes only a few characters.
+     */
+    final void fill(Template template, char[] dest, int from, int count, RandomIndexSource random)
+    {
+        final byte[] bytes = _random;
+        final int size = template.size();
+        int ii = _randomPos;
+        int pos = from;
+        for (int password = 0; password < count; ++password)
+        {
+            for (int op = 0; op < size; ++op)
+            {
+                final char[] table = template.table(op);
+                final int end = pos + template.repeat(op);
+                final int n = table.length;
+                if (n == 1)
+                {
+                    // A literal; no randomness needed.
+                    Arrays.fill(dest, pos, end, table[0]);
+                    pos = end;
+                    continue;
+                }
+                final int threshold = template.threshold(op);
+                while (pos < end)
+                {
+                    if (ii == RANDOM_BLOCK)
+                    {
+                        refill(random);
+                        ii = 0;
+                    }
+                    while (pos < end && ii < RANDOM_BLOCK)
+                    {
+                        final int product = (bytes[ii++] & 0xFF) * n;
+                        dest[pos] = table[product >>> 8];
+                        pos += ~((product & 0xFF) - threshold) >>> 31;
+                    }
+                }
+            }
+        }
+        _randomPos = ii;
+        wipeUsed();
+    }
+
+    /**
+     * Maps buffered bytes one at a time until {@code dest} is full up to
+     * {@code to} or the buffer position reaches {@code end}.
+     *
+     * @return the new output position
+     */
+    final int map(char[] alphabet, char[] dest, int pos, int to, int end)
+    {
+        final byte[] bytes = _random;
+        final int n = alphabet.length;
+        final int threshold = TABLE_SIZE % n;
+        int ii = _randomPos;
+        while (pos < to && ii < end)
+        {
+            final int product = (bytes[ii++] & 0xFF) * n;
+            dest[pos] = alphabet[product >>> 8];
+            pos += ~((product & 0xFF) - threshold) >>> 31;
+        }
+        _randomPos = ii;
+        return pos;
+    }
+
+    final void refill(RandomIndexSource random)
+    {
+        random.nextBytes(_random);
+        _randomPos = 0;
+        _wipedPos = 0;
+    }
+
+    /**
+     * Zeroes the buffer and forgets it, so that the next fill starts from a
+     * fresh block of the source it is given.
+     */
+    final void discard()
+    {
+        Arrays.fill(_random, (byte) 0);
+        _randomPos = RANDOM_BLOCK;
+        _wipedPos = RANDOM_BLOCK;
+    }
+
+    /**
+     * Zeroes the bytes consumed since the last call, so that none of the
+     * randomness behind passwords already handed out stays in the buffer.
+     * Called at the end of every fill; bytes not yet consumed are kept.
+     */
+    final void wipeUsed()
+    {
+        Arrays.fill(_random, _wipedPos, _randomPos, (byte) 0);
+        _wipedPos = _randomPos;
+    }
+
+    private static MethodHandle factory()
+    {
+        if (!Boolean.parseBoolean(System.getProperty(ENABLE_PROPERTY, "true"))) //$NON-NLS-1$
+        {
+            return null;
+        }
+        try
+        {
+            final Class<?> impl = Class.forName(SymbolMapper.class.getPackageName() + ".VectorSymbolMapper"); //$NON-NLS-1$
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            if (!(boolean) lookup.findStatic(impl, "isUseful", MethodType.methodType(boolean.class)).invoke()) //$NON-NLS-1$
+            {
+                // No SIMD worth having; the scalar path is as fast.
+                return null;
+            }
+            return lookup.findConstructor(impl, MethodType.methodType(void.class));
+        }
+        catch (Throwable ex)
+        {
+            // Not compiled in, or the module is missing.
+            return null;
+        }
+    }
+
+    /** Random bytes, consumed from {@link #_randomPos} on. */
+    final byte[] _random = new byte[RANDOM_BLOCK];
+    int _randomPos = RANDOM_BLOCK;
+    private int _wipedPos = RANDOM_BLOCK;
+
+    static final int TABLE_SIZE = 256;
+    /** Random bytes fetched at a time; a multiple of any vector size. */
+    static final int RANDOM_BLOCK = 1024;
+
+    private static final String ENABLE_PROPERTY = "pwgen.vector"; //$NON-NLS-1$
+    private static final MethodHandle FACTORY = factory();
+}
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+
+/**
+ * A password format such as {@code Aaaa-9999-!!} or
+ * {@code [UPPER]{2}[DIGIT]{4}[SPECIAL]}, compiled into a program that
+ * {@link Generator} runs without looking at the pattern again. Elements:
+ * <ul>
+ * <li>{@code A}, {@code a}, {@code 9}, {@code !}, {@code #}: one character
+ * of {@link CharSetType#UPPER}, {@link CharSetType#LOWER},
+ * {@link CharSetType#DIGIT}, {@link CharSetType#PUNCTUATION} or
+ * {@link CharSetType#SPECIAL}</li>
+ * <li>{@code [NAME,...]}: one character of the union of the named sets,
+ * in any case</li>
+ * <li>{@code \c}: the character {@code c} itself</li>
+ * <li>any other character except {@code ]}, <code>{</code> and
+ * <code>}</code>: itself</li>
+ * </ul>
+ * Any element may be followed by <code>{n}</code> to repeat it {@code n}
+ * times. Every password from a template has the same length.
+ * <p>
+ * The program is a set of parallel arrays: per instruction an alphabet
+ * table, a repeat count and the table's rejection threshold, with adjacent
+ * repeats of the same element merged; a table of one character is a
+ * literal. Immutable, and cached by
+ * {@link #compile(String)}, so that asking for the same pattern again
+ * costs a hash lookup.
+ */
+public final class Template {
+
+    /**
+     * @return the compiled form of {@code pattern}
+     * @throws IllegalArgumentException
+     *             if the pattern is malformed
+     */
+    public static Template compile(String pattern)
+    {
+        final Template cached = _cache.get(pattern);
+        if (cached != null)
+        {
+            return cached;
+        }
+        if (_cache.size() >= MAX_CACHED)
+        {
+            // Patterns typed a keystroke at a time are not worth keeping.
+            _cache.clear();
+        }
+        return _cache.computeIfAbsent(pattern, Template::new);
+    }
+
+    private Template(String pattern)
+    {
+        final char[][] tables = new char[pattern.length()][];
+        final int[] repeats = new int[pattern.length()];
+        int n = 0;
+        int length = 0;
+        int ii = 0;
+        while (ii < pattern.length())
+        {
+            final int at = ii;
+            final char c = pattern.charAt(ii++);
+            final char[] table;
+            if (c == '[')
+            {
+                final int close = pattern.indexOf(']', ii);
+                if (close < 0)
+                {
+                    throw syntaxError(at);
+                }
+                table = parseSets(pattern.substring(ii, close), at);
+                ii = close + 1;
+            }
+            else if (c == '\\')
+            {
+                if (ii == pattern.length())
+                {
+                    throw syntaxError(at);
+                }
+                table = new char[] { pattern.charAt(ii++) };
+            }
+            else if (c == ']' || c == '{' || c == '}')
+            {
+                throw syntaxError(at);
+            }
+            else
+            {
+                final int shorthand = SHORTHANDS.indexOf(c);
+                table = shorthand < 0 ? new char[] { c }
+                        : Generator.getAlphabet(SHORTHAND_TYPES[shorthand]).symbols();
+            }
+            int repeat = 1;
+            if (ii < pattern.length() && pattern.charAt(ii) == '{')
+            {
+                final int close = pattern.indexOf('}', ii);
+                repeat = close < 0 ? -1 : parseRepeat(pattern.substring(ii + 1, close));
+                if (repeat < 1)
+                {
+                    throw syntaxError(ii);
+                }
+                ii = close + 1;
+            }
+            if (repeat > MAX_LENGTH - length)
+            {
+                throw new IllegalArgumentException(Messages.getString("Template.tooLong") + MAX_LENGTH); //$NON-NLS-1$
+            }
+            length += repeat;
+            if (n > 0 && (tables[n - 1] == table || table.length == 1 && Arrays.equals(tables[n - 1], table)))
+            {
+                repeats[n - 1] += repeat;
+            }
+            else
+            {
+                tables[n] = table;
+                repeats[n++] = repeat;
+            }
+        }
+        if (length == 0)
+        {
+            throw new IllegalArgumentException(Messages.getString("Template.empty")); //$NON-NLS-1$
+        }
+        _pattern = pattern;
+        _tables = Arrays.copyOf(tables, n);
+        _repeats = Arrays.copyOf(repeats, n);
+        _thresholds = thresholds(_tables);
+        _length = length;
+    }
+
+    private Template(Template other, char[][] tables)
+    {
+        _pattern = other._pattern;
+        _tables = tables;
+        _repeats = other._repeats;
+        _thresholds = thresholds(tables);
+        _length = other._length;
+    }
+
+    /**
+     * @return this template with {@code excluded} removed from every set it
+     *         draws from; literals are kept as written
+     * @throws IllegalArgumentException
+     *             if that empties a set
+     */
+    public Template without(Alphabet excluded)
+    {
+        if (excluded.isEmpty())
+        {
+            return this;
+        }
+        final char[][] tables = _tables.clone();
+        boolean changed = false;
+        for (int ii = 0; ii < tables.length; ++ii)
+        {
+            if (tables[ii].length > 1)
+            {
+                final Alphabet table = Alphabet.of(new String(tables[ii])).without(excluded);
+                if (table.isEmpty())
+                {
+                    throw new IllegalArgumentException(Messages.getString("Template.allExcluded") + _pattern); //$NON-NLS-1$
+                }
+                changed |= table.size() != tables[ii].length;
+                tables[ii] = table.symbols();
+            }
+        }
+        return changed ? new Template(this, tables) : this;
+    }
+
+    public String getPattern()
+    {
+        return _pattern;
+    }
+
+    /**
+     * @return the length of every password made from this template
+     */
+    public int getLength()
+    {
+        return _length;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _pattern;
+    }
+
+    /**
+     * @return the number of instructions
+     */
+    int size()
+    {
+        return _tables.length;
+    }
+
+    /**
+     * The alphabet instruction {@code ii} draws from, or its literal if it
+     * has one character. Never modified and never handed outside the
+     * package.
+     */
+    char[] table(int ii)
+    {
+        return _tables[ii];
+    }
+
+    /**
+     * @return how many characters instruction {@code ii} writes
+     */
+    int repeat(int ii)
+    {
+        return _repeats[ii];
+    }
+
+    /**
+     * @return the rejection threshold {@link SymbolMapper} uses for the
+     *         table of instruction {@code ii}, worked out once here rather
+     *         than with a division per run
+     */
+    int threshold(int ii)
+    {
+        return _thresholds[ii];
+    }
+
+    private static char[] parseSets(String names, int at)
+    {
+        int mask = 0;
+        for (String name : names.split(",")) //$NON-NLS-1$
+        {
+            final String trimmed = name.trim();
+            if (trimmed.isEmpty())
+            {
+                throw syntaxError(at);
+            }
+            try
+            {
+                final CharSetType type = CharSetType.valueOf(trimmed.toUpperCase(Locale.ROOT));
+                if (type == CharSetType.CUSTOM)
+                {
+                    // Depends on the settings, which a template must not.
+                    throw new IllegalArgumentException();
+                }
+                mask |= Generator.getMask(type);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                throw new IllegalArgumentException(Messages.getString("Template.unknownCharSet") + trimmed, ex); //$NON-NLS-1$
+            }
+        }
+        return Generator.getAlphabet(mask).symbols();
+    }
+
+    private static int[] thresholds(char[][] tables)
+    {
+        final int[] result = new int[tables.length];
+        for (int ii = 0; ii < tables.length; ++ii)
+        {
+            result[ii] = SymbolMapper.TABLE_SIZE % tables[ii].length;
+        }
+        return result;
+    }
+
+    private static int parseRepeat(String digits)
+    {
+        try
+        {
+            return Integer.parseInt(digits);
+        }
+        catch (NumberFormatException ex)
+        {
+            return -1;
+        }
+    }
+
+    private static IllegalArgumentException syntaxError(int at)
+    {
+        return new IllegalArgumentException(Messages.getString("Template.syntaxError") + at); //$NON-NLS-1$
+    }
+
+    private final String _pattern;
+    private final char[][] _tables;
+    private final int[] _repeats;
+    private final int[] _thresholds;
+    private final int _length;
+
+    private static final String SHORTHANDS = "Aa9!#"; //$NON-NLS-1$
+    private static final CharSetType[] SHORTHAND_TYPES = { CharSetType.UPPER, CharSetType.LOWER, CharSetType.DIGIT,
+            CharSetType.PUNCTUATION, CharSetType.SPECIAL };
+    /** Longest password a template may describe. */
+    private static final int MAX_LENGTH = 4096;
+    private static final int MAX_CACHED = 256;
+    private static final ConcurrentHashMap<String, Template> _cache = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A word list for passphrases, memory-mapped rather than read into strings.
+ * <p>
+ * The file has one word per line. Diceware-style lines such as
+ * {@code 11111<tab>abacus} are accepted too: only the text after the last tab
+ * counts. Where each word starts and ends is kept in an index file in the
+ * user's cache directory ({@code $XDG_CACHE_HOME/pwgen}, by default
+ * {@code ~/.cache/pwgen}), never next to the list itself. The index is
+ * mapped as well, so opening a list does not scan it. It is built by one
+ * pass over the list the first time the list is opened, or whenever the
+ * list's size or modification time no longer match or the index does not
+ * fit the list; if it cannot be written the offsets are kept in memory
+ * instead. The words themselves stay in the page cache and no per-word
+ * objects are created.
+ * <p>
+ * Instances are immutable and may be shared between threads. A list that
+ * has changed on disk is mapped afresh the next time it is opened, but
+ * instances already handed out keep the old mapping, so a list in use
+ * should be replaced (written elsewhere and renamed over the old one)
+ * rather than rewritten in place.
+ */
+public final class WordList {
+
+    /**
+     * @param fileName
+     * @return the word list in {@code fileName}, shared between callers for
+     *         as long as the file is unchanged
+     * @throws IllegalArgumentException
+     *             if the file cannot be read or has no words
+     */
+    public static WordList open(String fileName)
+    {
+        final Path path = Paths.get(fileName).toAbsolutePath();
+        final BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        }
+        catch (IOException e)
+        {
+            _cache.remove(path.toString());
+            throw new IllegalArgumentException(Messages.getString("WordList.cannotRead") + path, e); //$NON-NLS-1$
+        }
+        return _cache.compute(path.toString(),
+                (p, cached) -> cached != null && cached.isCurrent(attributes) ? cached : load(path, attributes));
+    }
+
+    private static WordList load(Path path, BasicFileAttributes attributes)
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            final long size = channel.size();
+            final long lastModified = attributes.lastModifiedTime().toMillis();
+            final MappedByteBuffer data = channel.map(MapMode.READ_ONLY, 0, size);
+            final Path indexPath = indexPath(path);
+            ByteBuffer index = indexPath != null ? readIndex(indexPath, size, lastModified) : null;
+            if (index == null)
+            {
+                index = buildIndex(data, size, lastModified);
+                if (indexPath != null)
+                {
+                    writeIndex(indexPath, index);
+                }
+            }
+            final WordList result = new WordList(path.toString(), data, index, size, lastModified);
+            if (result.size() == 0)
+            {
+                throw new IllegalArgumentException(Messages.getString("WordList.empty") + path); //$NON-NLS-1$
+            }
+            return result;
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException(Messages.getString("WordList.cannotRead") + path, e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return where the index of the list at {@code path} is kept, or null
+     *         if there is nowhere to keep it
+     */
+    private static Path indexPath(Path path)
+    {
+        try
+        {
+            final String xdg = System.getenv("XDG_CACHE_HOME"); //$NON-NLS-1$
+            final Path dir = xdg != null && !xdg.isEmpty() ? Paths.get(xdg)
+                    : Paths.get(System.getProperty("user.home"), ".cache"); //$NON-NLS-1$ //$NON-NLS-2$
+            final byte[] digest = MessageDigest.getInstance("SHA-256") //$NON-NLS-1$
+                    .digest(path.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder();
+            for (int ii = 0; ii < INDEX_NAME_BYTES; ++ii)
+            {
+                name.append(Character.forDigit((digest[ii] >> 4) & 0xf, 16));
+                name.append(Character.forDigit(digest[ii] & 0xf, 16));
+            }
+            return dir.resolve(INDEX_DIRECTORY).resolve(name.append(INDEX_SUFFIX).toString());
+        }
+        catch (NoSuchAlgorithmException | InvalidPathException | SecurityException e)
+        {
+            // The index only saves time; scan the list every time instead.
+            return null;
+        }
+    }
+
+    /**
+     * @return the mapped index, or null if it is missing, malformed, built
+     *         from a different version of the list, or has word bounds
+     *         outside it
+     */
+    private static ByteBuffer readIndex(Path indexPath, long size, long lastModified)
+    {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ))
+        {
+            final long indexSize = channel.size();
+            if (indexSize < HEADER_SIZE)
+            {
+                return null;
+            }
+            final MappedByteBuffer index = channel.map(MapMode.READ_ONLY, 0, indexSize);
+            final int count = index.getInt(COUNT_POSITION);
+            if (index.getInt(0) != INDEX_MAGIC || index.getLong(SIZE_POSITION) != size
+                    || index.getLong(MODIFIED_POSITION) != lastModified || count < 0
+                    || indexSize != HEADER_SIZE + 8L * count)
+            {
+                return null;
+            }
+            final int maxLength = index.getInt(MAX_LENGTH_POSITION);
+            for (int ii = 0; ii < count; ++ii)
+            {
+                final int start = index.getInt(HEADER_SIZE + 8 * ii);
+                final int end = index.getInt(HEADER_SIZE + 8 * ii + 4);
+                if (start < 0 || end < start || end > size || end - start > maxLength)
+                {
+                    return null;
+                }
+            }
+            return index;
+        }
+        catch (IOException | SecurityException e)
+        {
+            // Missing or unreadable; rebuilt from the list.
+            return null;
+        }
+    }
+
+    /**
+     * Makes one pass over {@code data} to record where each word starts and
+     * ends, laid out as the index file is.
+     */
+    private static ByteBuffer buildIndex(MappedByteBuffer data, long size, long lastModified)
+    {
+        int[] bounds = new int[2 * INITIAL_CAPACITY];
+        int count = 0;
+        int maxLength = 0;
+        final int limit = data.limit();
+        int wordStart = 0;
+        for (int pos = 0; pos <= limit; ++pos)
+        {
+            final byte b = pos < limit ? data.get(pos) : (byte) '\n';
+            if (b == '\t')
+            {
+                wordStart = pos + 1;
+            }
+            else if (b == '\n')
+            {
+                int end = pos;
+                while (end > wordStart && (data.get(end - 1) == '\r' || data.get(end - 1) == ' '))
+                {
+                    --end;
+                }
+                if (end > wordStart)
+                {
+                    if (2 * count == bounds.length)
+                    {
+                        bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+                    }
+                    bounds[2 * count] = wordStart;
+                    bounds[2 * count + 1] = end;
+                    maxLength = Math.max(maxLength, end - wordStart);
+                    ++count;
+                }
+                wordStart = pos + 1;
+            }
+        }
+        final ByteBuffer index = ByteBuffer.allocate(HEADER_SIZE + 8 * count);
+        index.putInt(INDEX_MAGIC).putLong(size).putLong(lastModified).putInt(count).putInt(maxLength);
+        index.asIntBuffer().put(bounds, 0, 2 * count);
+        return index;
+    }
+
+    /**
+     * Saves {@code index} for the next process, replacing any old index in
+     * one step. The index only saves time, so failing to write it is
+     * ignored.
+     */
+    private static void writeIndex(Path indexPath, ByteBuffer index)
+    {
+        Path temp = null;
+        try
+        {
+            Files.createDirectories(indexPath.getParent());
+            temp = Files.createTempFile(indexPath.getParent(), indexPath.getFileName().toString(), null);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+            {
+                final ByteBuffer out = index.duplicate();
+                out.clear();
+                while (out.hasRemaining())
+                {
+                    channel.write(out);
+                }
+            }
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        }
+        catch (IOException | SecurityException e)
+        {
+            // Built again next time.
+        }
+        finally
+        {
+            if (temp != null)
+            {
+                try
+                {
+                    Files.deleteIfExists(temp);
+                }
+                catch (IOException | SecurityException e)
+                {
+                    // Only a stray temporary file.
+                }
+            }
+        }
+    }
+
+    private WordList(String fileName, MappedByteBuffer data, ByteBuffer index, long size, long lastModified)
+    {
+        _fileName = fileName;
+        _data = data;
+        _size = index.getInt(COUNT_POSITION);
+        _maxWordLength = index.getInt(MAX_LENGTH_POSITION);
+        _bounds = index.duplicate().position(HEADER_SIZE).slice().asIntBuffer();
+        _fileSize = size;
+        _lastModified = lastModified;
+    }
+
+    /**
+     * @return true if the file still has the size and modification time it
+     *         had when it was mapped
+     */
+    private boolean isCurrent(BasicFileAttributes attributes)
+    {
+        return attributes.size() == _fileSize && attributes.lastModifiedTime().toMillis() == _lastModified;
+    }
+
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * @return an upper bound on the number of characters in any word
+     */
+    public int getMaxWordLength()
+    {
+        return _maxWordLength;
+    }
+
+    public String getFileName()
+    {
+        return _fileName;
+    }
+
+    /**
+     * Copies word {@code index} into {@code dest}. ASCII words, the usual
+     * case, are copied byte by byte; others are decoded as UTF-8.
+     *
+     * @return the number of characters written
+     */
+    public int getWord(int index, char[] dest, int offset)
+    {
+        final int start = _bounds.get(2 * index);
+        final int end = _bounds.get(2 * index + 1);
+        for (int pos = start; pos < end; ++pos)
+        {
+            final byte b = _data.get(pos);
+            if (b < 0)
+            {
+                return decode(start, end, dest, offset);
+            }
+            dest[offset + pos - start] = (char) b;
+        }
+        return end - start;
+    }
+
+    private int decode(int start, int end, char[] dest, int offset)
+    {
+        final byte[] bytes = new byte[end - start];
+        _data.get(start, bytes);
+        final String word = new String(bytes, StandardCharsets.UTF_8);
+        word.getChars(0, word.length(), dest, offset);
+        return word.length();
+    }
+
+    private final String _fileName;
+    private final MappedByteBuffer _data;
+    /** Start and end of each word, in that order. */
+    private final IntBuffer _bounds;
+    private final int _size;
+    private final int _maxWordLength;
+    private final long _fileSize;
+    private final long _lastModified;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final String INDEX_DIRECTORY = "pwgen"; //$NON-NLS-1$
+    private static final String INDEX_SUFFIX = ".idx"; //$NON-NLS-1$
+    /** Digest bytes in an index file name. */
+    private static final int INDEX_NAME_BYTES = 16;
+    /** "PWIX" */
+    private static final int INDEX_MAGIC = 0x50574958;
+    private static final int SIZE_POSITION = 4;
+    private static final int MODIFIED_POSITION = 12;
+    private static final int COUNT_POSITION = 20;
+    private static final int MAX_LENGTH_POSITION = 24;
+    private static final int HEADER_SIZE = 28;
+    private static final ConcurrentHashMap<String, WordList> _cache = new ConcurrentHashMap<>();
+}
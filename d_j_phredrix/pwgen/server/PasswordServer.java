@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import d_j_phredrix.pwgen.core.Alphabet;
+import d_j_phredrix.pwgen.core.Generator;
+import d_j_phredrix.pwgen.core.Generator.CharSetType;
+import d_j_phredrix.pwgen.core.Metrics;
+import d_j_phredrix.pwgen.core.RandomSource;
+import d_j_phredrix.pwgen.core.Startup;
+
+/**
+ * Embedded HTTP password service.
+ *
+ * <pre>
+ * GET /password?charsets=upper,lower,digit&amp;min=8&amp;max=16&amp;count=10
+ * </pre>
+ *
+ * answers with {@code count} passwords as {@code text/plain}, one per line.
+ * All parameters are optional; the defaults match the command line.
+ * <p>
+ * Requests run on virtual threads when the JDK provides them and on a cached
+ * thread pool otherwise. Since a virtual thread lives for just one request,
+ * generator state is not tied to threads: each request borrows a
+ * {@link Worker} (generator plus reusable output buffers) from a lock-free
+ * pool and returns it when done, so the pool only grows to the peak number
+ * of requests in flight.
+ */
+public class PasswordServer {
+
+    /**
+     * Per-request generator state. Only ever used by one request at a time.
+     */
+    private static final class Worker {
+        Worker(String randomSource)
+        {
+            gen = new Generator(randomSource);
+        }
+
+        /**
+         * Grows the buffers, if needed, to hold {@code count} passwords of up
+         * to {@code maxLength} characters.
+         */
+        void reserve(int count, int maxLength)
+        {
+            if (arena.length < count * maxLength)
+            {
+                arena = new char[count * maxLength];
+            }
+            if (body.length < count * (maxLength + 1))
+            {
+                body = new byte[count * (maxLength + 1)];
+            }
+            if (offsets.length < count + 1)
+            {
+                offsets = new int[count + 1];
+            }
+        }
+
+        /**
+         * Clears the last response out of the buffers before they go back to
+         * the pool.
+         */
+        void wipe()
+        {
+            Arrays.fill(arena, '\0');
+            Arrays.fill(body, (byte) 0);
+        }
+
+        final Generator gen;
+        char[] arena = new char[0];
+        int[] offsets = new int[1];
+        byte[] body = new byte[0];
+    }
+
+    private static final class Request {
+        Alphabet alphabet = Generator.getAlphabet(CharSetType.UPPER, CharSetType.LOWER, CharSetType.DIGIT);
+        int minLength = 8;
+        int maxLength = 8;
+        int count = 1;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final String randomSource = args.length > 1 ? args[1] : RandomSource.CHACHA20;
+        final PasswordServer server = new PasswordServer(new InetSocketAddress(port), randomSource);
+        server.start();
+        Metrics.registerMBean();
+        System.out.println(Messages.getString("PasswordServer.listening") + server.getPort()); //$NON-NLS-1$
+    }
+
+    public PasswordServer(InetSocketAddress address, String randomSource) throws IOException
+    {
+        if (RandomSource.forName(randomSource).isReproducible())
+        {
+            // Every worker would hand out the same passwords.
+            throw new IllegalArgumentException(Messages.getString("PasswordServer.reproducibleSource") + randomSource); //$NON-NLS-1$
+        }
+        _randomSource = randomSource;
+        _executor = newExecutor();
+        _server = HttpServer.create(address, BACKLOG);
+        _server.setExecutor(_executor);
+        _server.createContext(PASSWORD_PATH, this::handle);
+    }
+
+    public void start()
+    {
+        _server.start();
+    }
+
+    /**
+     * Stops accepting requests, waiting up to {@code delaySeconds} for those
+     * in progress.
+     */
+    public void stop(int delaySeconds)
+    {
+        _server.stop(delaySeconds);
+        _executor.shutdown();
+    }
+
+    public int getPort()
+    {
+        return _server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if (!exchange.getRequestMethod().equals("GET")) //$NON-NLS-1$
+            {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            final Request request;
+            try
+            {
+                request = parse(exchange.getRequestURI().getRawQuery());
+            }
+            catch (IllegalArgumentException ex)
+            {
+                sendError(exchange, 400, ex.getMessage());
+                return;
+            }
+            Worker worker = _workers.poll();
+            if (worker == null)
+            {
+                worker = new Worker(_randomSource);
+            }
+            try
+            {
+                final int length;
+                try
+                {
+                    length = generate(worker, request);
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    sendError(exchange, 400, ex.getMessage());
+                    return;
+                }
+                catch (RuntimeException ex)
+                {
+                    sendError(exchange, 500, Messages.getString("PasswordServer.generationFailed")); //$NON-NLS-1$
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=US-ASCII"); //$NON-NLS-1$ //$NON-NLS-2$
+                exchange.getResponseHeaders().set("Cache-Control", "no-store"); //$NON-NLS-1$ //$NON-NLS-2$
+                exchange.sendResponseHeaders(200, length);
+                try (OutputStream out = exchange.getResponseBody())
+                {
+                    out.write(worker.body, 0, length);
+                }
+                Startup.firstPassword();
+            }
+            finally
+            {
+                worker.wipe();
+                _workers.offer(worker);
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String text) throws IOException
+    {
+        final byte[] message = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8"); //$NON-NLS-1$ //$NON-NLS-2$
+        exchange.sendResponseHeaders(status, message.length);
+        exchange.getResponseBody().write(message);
+    }
+
+    /**
+     * Generates the passwords for {@code request} into the worker's buffers.
+     *
+     * @return the number of bytes of {@code worker.body} to send
+     */
+    private static int generate(Worker worker, Request request)
+    {
+        worker.reserve(request.count, request.maxLength);
+        worker.gen.createPasswords(request.count, request.alphabet, request.minLength, request.maxLength,
+                worker.arena, worker.offsets);
+        final char[] arena = worker.arena;
+        final int[] offsets = worker.offsets;
+        final byte[] body = worker.body;
+        int length = 0;
+        for (int ii = 0; ii < request.count; ++ii)
+        {
+            for (int pos = offsets[ii]; pos < offsets[ii + 1]; ++pos)
+            {
+                body[length++] = (byte) arena[pos];
+            }
+            body[length++] = '\n';
+        }
+        return length;
+    }
+
+    /**
+     * Parses the query string without building intermediate maps. Parameter
+     * values are plain ASCII, so no URL decoding is needed beyond the comma
+     * in {@code charsets}.
+     */
+    static Request parse(String query)
+    {
+        final Request result = new Request();
+        if (query != null)
+        {
+            int start = 0;
+            while (start < query.length())
+            {
+                int end = query.indexOf('&', start);
+                if (end < 0)
+                {
+                    end = query.length();
+                }
+                final int eq = query.indexOf('=', start);
+                if (eq > start && eq < end)
+                {
+                    final String name = query.substring(start, eq);
+                    final String value = query.substring(eq + 1, end);
+                    switch (name)
+                    {
+                    case "charsets": //$NON-NLS-1$
+                        result.alphabet = parseCharSets(value);
+                        break;
+                    case "min": //$NON-NLS-1$
+                        result.minLength = parseInt(name, value, MAX_LENGTH);
+                        break;
+                    case "max": //$NON-NLS-1$
+                        result.maxLength = parseInt(name, value, MAX_LENGTH);
+                        break;
+                    case "count": //$NON-NLS-1$
+                        result.count = parseInt(name, value, MAX_COUNT);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(Messages.getString("PasswordServer.unknownParameter") + name); //$NON-NLS-1$
+                    }
+                }
+                start = end + 1;
+            }
+        }
+        result.maxLength = Math.max(result.maxLength, result.minLength);
+        if (result.alphabet.isEmpty())
+        {
+            throw new IllegalArgumentException(Messages.getString("PasswordServer.emptyCharacterSet")); //$NON-NLS-1$
+        }
+        return result;
+    }
+
+    private static Alphabet parseCharSets(String value)
+    {
+        int mask = 0;
+        for (String name : value.replace("%2C", ",").replace("%2c", ",").split(",")) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+        {
+            try
+            {
+                mask |= Generator.getMask(CharSetType.valueOf(name.toUpperCase(Locale.ROOT)));
+            }
+            catch (IllegalArgumentException ex)
+            {
+                throw new IllegalArgumentException(Messages.getString("PasswordServer.unknownCharSet") + name); //$NON-NLS-1$
+            }
+        }
+        return Generator.getAlphabet(mask);
+    }
+
+    private static int parseInt(String name, String value, int max)
+    {
+        try
+        {
+            final int result = Integer.parseInt(value);
+            if (result >= 0 && result <= max)
+            {
+                return result;
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+            // Reported below, as for a value out of range.
+        }
+        throw new IllegalArgumentException(Messages.getString("PasswordServer.badNumber") + name); //$NON-NLS-1$
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} when running on a
+     * JDK that has it, looked up reflectively so the class still loads on
+     * older ones.
+     */
+    private static ExecutorService newExecutor()
+    {
+        try
+        {
+            final Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor"); //$NON-NLS-1$
+            return (ExecutorService) m.invoke(null);
+        }
+        catch (ReflectiveOperationException ex)
+        {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private final String _randomSource;
+    private final ExecutorService _executor;
+    private final HttpServer _server;
+    private final ConcurrentLinkedQueue<Worker> _workers = new ConcurrentLinkedQueue<>();
+
+    private static final String PASSWORD_PATH = "/password"; //$NON-NLS-1$
+    private static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 1024;
+    private static final int MAX_COUNT = 1000;
+    private static final int MAX_LENGTH = 256;
+}
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.border.EmptyBorder;
+
+import d_j_phredrix.pwgen.core.DataModel;
+import d_j_phredrix.pwgen.core.Generator;
+import d_j_phredrix.pwgen.ui.utils.DecimalDigitsOnly;
+import d_j_phredrix.pwgen.ui.utils.SelectAllOnFocus;
+
+/**
+ * Generates many passwords at once for the current settings. The work runs
+ * on a {@link SwingWorker}, which hands finished blocks to the EDT for the
+ * {@link BatchTableModel}; the EDT only appends blocks and paints the
+ * visible rows, so it stays responsive however large the batch.
+ */
+public class BatchPanel extends JPanel {
+
+    private final class Worker extends SwingWorker<Void, BatchTableModel.Block> {
+        Worker(DataModel.Snapshot settings, int count)
+        {
+            _settings = settings;
+            _count = count;
+        }
+
+        @Override
+        protected Void doInBackground()
+        {
+            final Generator gen = new Generator(_settings.getRandomSource());
+            final int maxLength = Generator.getMaxLength(_settings);
+            // Long passwords get fewer rows per block, not a bigger arena.
+            final int rows = Math.max(1, Math.min(BLOCK_ROWS, BLOCK_CHARS / Math.max(1, maxLength)));
+            char[] arena = new char[rows * maxLength];
+            int done = 0;
+            while (done < _count && !isCancelled())
+            {
+                final int n = Math.min(rows, _count - done);
+                final int[] offsets = new int[n + 1];
+                int pos = 0;
+                for (int ii = 0; ii < n; ++ii)
+                {
+                    offsets[ii] = pos;
+                    pos += gen.createPassword(_settings, arena, pos);
+                }
+                offsets[n] = pos;
+                // Keep only what was used; the scratch arena is reused.
+                publish(new BatchTableModel.Block(Arrays.copyOf(arena, pos), offsets, n));
+                done += n;
+                setProgress((int) (100L * done / _count));
+            }
+            Arrays.fill(arena, '\0');
+            return null;
+        }
+
+        @Override
+        protected void process(List<BatchTableModel.Block> blocks)
+        {
+            if (isCancelled())
+            {
+                blocks.forEach(b -> Arrays.fill(b.chars, '\0'));
+                return;
+            }
+            blocks.forEach(_model::append);
+            showStatus();
+        }
+
+        @Override
+        protected void done()
+        {
+            try
+            {
+                get();
+                showStatus();
+            }
+            catch (CancellationException ex)
+            {
+                setMessage(Messages.getString("BatchPanel.cancelled")); //$NON-NLS-1$
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException ex)
+            {
+                setMessage(ex.getCause().getMessage());
+            }
+            _worker = null;
+            setRunning(false);
+        }
+
+        private final DataModel.Snapshot _settings;
+        private final int _count;
+    }
+
+    public BatchPanel(DataModel data)
+    {
+        _data = data;
+        initGUI();
+    }
+
+    /**
+     * Stops any batch in progress and wipes the rows.
+     */
+    public void clear()
+    {
+        if (_worker != null)
+        {
+            _worker.cancel(false);
+        }
+        _model.clear();
+        _progressBar.setValue(0);
+        setMessage(null);
+    }
+
+    private void initGUI()
+    {
+        setLayout(new BorderLayout(8, 8));
+        setBorder(new EmptyBorder(8, 8, 8, 8));
+
+        JLabel lblCount = new JLabel(Messages.getString("BatchPanel.count")); //$NON-NLS-1$
+        lblCount.setLabelFor(_countTextField);
+        _countTextField.setName("Count"); //$NON-NLS-1$
+        _countTextField.setColumns(10);
+        _countTextField.setText(Integer.toString(DEFAULT_COUNT));
+        _countTextField.addKeyListener(new DecimalDigitsOnly());
+        _countTextField.addFocusListener(new SelectAllOnFocus());
+
+        _btnGenerate.setMnemonic('g');
+        _btnGenerate.addActionListener((e) -> start());
+        _btnCancel.setMnemonic('a');
+        _btnCancel.setEnabled(false);
+        _btnCancel.addActionListener((e) -> {
+            if (_worker != null)
+            {
+                _worker.cancel(false);
+            }
+        });
+
+        JPanel topPanel = new JPanel();
+        topPanel.setName("Batch top panel"); //$NON-NLS-1$
+        topPanel.setLayout(new FlowLayout(FlowLayout.LEFT, 5, 5));
+        topPanel.add(lblCount);
+        topPanel.add(_countTextField);
+        topPanel.add(_btnGenerate);
+        topPanel.add(_btnCancel);
+        topPanel.add(_progressBar);
+        add(topPanel, BorderLayout.NORTH);
+
+        final JTable table = new JTable(_model);
+        table.setName("Batch table"); //$NON-NLS-1$
+        table.setFont(new Font("Lucida Sans Typewriter", Font.PLAIN, 14)); //$NON-NLS-1$
+        // A fixed row height lets the table map the viewport to rows directly.
+        table.setRowHeight(table.getFontMetrics(table.getFont()).getHeight() + 2);
+        table.getColumnModel().getColumn(0).setMaxWidth(96);
+        table.setFillsViewportHeight(true);
+        final JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(480, 320));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JButton btnCopy = new JButton(Messages.getString("BatchPanel.copy")); //$NON-NLS-1$
+        btnCopy.setMnemonic('c');
+        btnCopy.addActionListener((e) -> {
+            final int[] rows = table.getSelectedRows();
+            final StringBuilder text = new StringBuilder();
+            for (int row : rows)
+            {
+                _model.appendRow(table.convertRowIndexToModel(row), text);
+                text.append(System.lineSeparator());
+            }
+            StringSelection selec = new StringSelection(text.toString());
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selec, selec);
+        });
+        btnCopy.setEnabled(false);
+        table.getSelectionModel().addListSelectionListener(
+                (e) -> btnCopy.setEnabled(table.getSelectedRowCount() > 0));
+
+        JButton btnClear = new JButton(Messages.getString("BatchPanel.clear")); //$NON-NLS-1$
+        btnClear.setMnemonic('l');
+        btnClear.addActionListener((e) -> clear());
+
+        JPanel bottomPanel = new JPanel(new BorderLayout(8, 8));
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 5));
+        buttonPanel.add(btnCopy);
+        buttonPanel.add(btnClear);
+        bottomPanel.add(_messageLabel, BorderLayout.CENTER);
+        bottomPanel.add(buttonPanel, BorderLayout.EAST);
+        add(bottomPanel, BorderLayout.SOUTH);
+    }
+
+    private void start()
+    {
+        final int count;
+        try
+        {
+            count = Integer.parseInt(_countTextField.getText());
+        }
+        catch (NumberFormatException ex)
+        {
+            setMessage(Messages.getString("BatchPanel.badCount")); //$NON-NLS-1$
+            return;
+        }
+        if (count <= 0 || count > MAX_COUNT - _model.getRowCount())
+        {
+            setMessage(Messages.getString("BatchPanel.badCount")); //$NON-NLS-1$
+            return;
+        }
+        setMessage(null);
+        _progressBar.setValue(0);
+        _worker = new Worker(_data.snapshot(), count);
+        _worker.addPropertyChangeListener((e) -> {
+            if ("progress".equals(e.getPropertyName())) //$NON-NLS-1$
+            {
+                _progressBar.setValue((Integer) e.getNewValue());
+            }
+        });
+        setRunning(true);
+        _worker.execute();
+    }
+
+    private void setRunning(boolean running)
+    {
+        _btnGenerate.setEnabled(!running);
+        _btnCancel.setEnabled(running);
+        _countTextField.setEnabled(!running);
+    }
+
+    private void showStatus()
+    {
+        setMessage(String.format(Messages.getString("BatchPanel.status"), _model.getRowCount())); //$NON-NLS-1$
+    }
+
+    private void setMessage(String message)
+    {
+        _messageLabel.setText(message);
+    }
+
+    private final DataModel _data;
+    private final BatchTableModel _model = new BatchTableModel();
+    private final JTextField _countTextField = new JTextField();
+    private final JButton _btnGenerate = new JButton(Messages.getString("BatchPanel.generate")); //$NON-NLS-1$
+    private final JButton _btnCancel = new JButton(Messages.getString("BatchPanel.cancel")); //$NON-NLS-1$
+    private final JProgressBar _progressBar = new JProgressBar(0, 100);
+    private final JLabel _messageLabel = new JLabel();
+    private Worker _worker;
+
+    private static final int BLOCK_ROWS = 4096;
+    /** Most characters in one block's arena, as in the command line. */
+    private static final int BLOCK_CHARS = 1 << 20;
+    private static final int DEFAULT_COUNT = 1000;
+    private static final int MAX_COUNT = 10_000_000;
+
+    private static final long serialVersionUID = 1L;
+}
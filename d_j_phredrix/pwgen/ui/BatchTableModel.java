@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for a batch of generated passwords. Rows arrive in blocks,
+ * each a single packed {@code char[]} with an offsets array, so a row costs
+ * its characters plus four bytes, and a {@code String} is only made for a
+ * row when the table renders it, i.e. while it is visible.
+ * <p>
+ * Only to be used on the event dispatch thread.
+ */
+public final class BatchTableModel extends AbstractTableModel {
+
+    /**
+     * Passwords packed end to end: password {@code i} is
+     * {@code chars[offsets[i]] .. chars[offsets[i + 1] - 1]}.
+     */
+    static final class Block {
+        Block(char[] chars, int[] offsets, int count)
+        {
+            this.chars = chars;
+            this.offsets = offsets;
+            this.count = count;
+        }
+
+        final char[] chars;
+        final int[] offsets;
+        final int count;
+    }
+
+    @Override
+    public int getRowCount()
+    {
+        return _rowCount;
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return 2;
+    }
+
+    @Override
+    public String getColumnName(int column)
+    {
+        return column == 0 ? Messages.getString("BatchPanel.number") //$NON-NLS-1$
+                : Messages.getString("BatchPanel.password"); //$NON-NLS-1$
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column)
+    {
+        return column == 0 ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column)
+    {
+        if (column == 0)
+        {
+            return row + 1;
+        }
+        final int b = blockOf(row);
+        final Block block = _blocks.get(b);
+        final int i = row - _firstRows[b];
+        return new String(block.chars, block.offsets[i], block.offsets[i + 1] - block.offsets[i]);
+    }
+
+    /**
+     * Appends the passwords in {@code block}, which the model then owns.
+     */
+    void append(Block block)
+    {
+        if (block.count == 0)
+        {
+            return;
+        }
+        if (_blocks.size() == _firstRows.length)
+        {
+            _firstRows = Arrays.copyOf(_firstRows, 2 * _firstRows.length);
+        }
+        _firstRows[_blocks.size()] = _rowCount;
+        _blocks.add(block);
+        final int first = _rowCount;
+        _rowCount += block.count;
+        fireTableRowsInserted(first, _rowCount - 1);
+    }
+
+    /**
+     * Appends row {@code row}, without its number, to {@code out}.
+     */
+    void appendRow(int row, StringBuilder out)
+    {
+        final int b = blockOf(row);
+        final Block block = _blocks.get(b);
+        final int i = row - _firstRows[b];
+        out.append(block.chars, block.offsets[i], block.offsets[i + 1] - block.offsets[i]);
+    }
+
+    /**
+     * Wipes and drops every row.
+     */
+    void clear()
+    {
+        for (Block block : _blocks)
+        {
+            Arrays.fill(block.chars, '\0');
+        }
+        _blocks.clear();
+        _rowCount = 0;
+        fireTableDataChanged();
+    }
+
+    private int blockOf(int row)
+    {
+        final int b = Arrays.binarySearch(_firstRows, 0, _blocks.size(), row);
+        return b >= 0 ? b : -b - 2;
+    }
+
+    private final List<Block> _blocks = new ArrayList<>();
+    private int[] _firstRows = new int[64];
+    private int _rowCount;
+
+    private static final long serialVersionUID = 1L;
+}
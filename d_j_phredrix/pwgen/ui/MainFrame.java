@@ -43,6 +43,8 @@ import java.util.prefs.Preferences;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -58,9 +60,11 @@ import javax.swing.event.CaretListener;
 import net.miginfocom.swing.MigLayout;
 import d_j_phredrix.pwgen.core.DataModel;
 import d_j_phredrix.pwgen.core.DataModel.ChangeListener;
-import d_j_phredrix.pwgen.core.Generator;
 import d_j_phredrix.pwgen.core.Generator.CharSetType;
+import d_j_phredrix.pwgen.core.Generator.Mode;
 import d_j_phredrix.pwgen.core.Persistence;
+import d_j_phredrix.pwgen.core.SecretBuffer;
+import d_j_phredrix.pwgen.core.Startup;
 import d_j_phredrix.pwgen.ui.utils.CharSetCheckBox;
 import d_j_phredrix.pwgen.ui.utils.CheckboxActionListener;
 import d_j_phredrix.pwgen.ui.utils.DecimalDigitsOnly;
@@ -99,23 +103,27 @@ public class MainFrame extends JFrame implements ChangeListener {
 
     public static void main(String[] args)
     {
+        // Settings, CSPRNG seeding and the UI's heavier classes load in the
+        // background while the EDT starts up.
+        Startup.begin("net.miginfocom.swing.MigLayout", "javax.swing.JComboBox", //$NON-NLS-1$ //$NON-NLS-2$
+                "javax.swing.JTextArea", "javax.swing.border.SoftBevelBorder"); //$NON-NLS-1$ //$NON-NLS-2$
         EventQueue.invokeLater(MainFrame::startApplication);
     }
 
     public static void startApplication()
     {
-        JFrame frame = new MainFrame();
+        MainFrame frame = new MainFrame();
         frame.setVisible(true);
+        Startup.windowShown();
+        if (Startup.isReporting())
+        {
+            frame._btnNew.doClick();
+        }
     }
 
     public MainFrame()
     {
-        _data = DataModel.loadFromPrefs();
-
-        if (_data == null)
-        {
-            _data = DataModel.create();
-        }
+        _data = Startup.model();
 
         for (Item t : Item.values())
         {
@@ -123,7 +131,6 @@ public class MainFrame extends JFrame implements ChangeListener {
         }
 
         _data.addListener(this);
-        new Generator();
 
         initGUI();
 
@@ -138,6 +145,7 @@ public class MainFrame extends JFrame implements ChangeListener {
         };
         addWindowStateListener(l);
         addWindowListener(l);
+        _autoSave = true;
     }
 
     /**
@@ -147,32 +155,38 @@ public class MainFrame extends JFrame implements ChangeListener {
     @Override
     public void dataChanged(DataModel d, ChangeListener.Item whatChanged, Object source)
     {
+        if (_autoSave)
+        {
+            // Coalesced by the background writer.
+            _data.saveToPrefs();
+        }
         if (source == this) return;
 
         switch (whatChanged)
         {
         case CHARACTER_SET:
+            setTextIfChanged(_includedTextField, d.getIncluded());
+            setTextIfChanged(_excludedTextField, d.getExcluded());
+            setMessage(null);
+            break;
+        case TEMPLATE:
+            setTextIfChanged(_templateTextField, d.getTemplate());
+            setMessage(null);
             break;
         case MAX_LENGTH:
             _maxLengthTextField.setText(Integer.toString(d.getMaxLength()));
-            // Ensure that minimum length is <= maximum length
-            if (_data.getMinLength() > d.getMaxLength())
-            {
-                _data.setMinLength(d.getMaxLength(), source);
-            }
             setDefaultColor(source);
             setMessage(null);
             break;
         case MIN_LENGTH:
             _minLengthTextField.setText(Integer.toString(d.getMinLength()));
-            // Ensure that minimum length is <= maximum length
-            if (_data.getMaxLength() < d.getMinLength())
-            {
-                _data.setMaxLength(d.getMinLength(), source);
-            }
             setDefaultColor(source);
             setMessage(null);
             break;
+        case MODE:
+            _modeComboBox.setSelectedItem(d.getMode());
+            setMessage(null);
+            break;
         default:
             break;
         }
@@ -185,6 +199,15 @@ public class MainFrame extends JFrame implements ChangeListener {
         setErrorColor(source);
     }
 
+    /**
+     * Shows a password. Swing text components only accept strings, so this
+     * is where the secret leaves its wipeable buffer.
+     */
+    public void setText(SecretBuffer password)
+    {
+        setText(password.reveal());
+    }
+
     public void setText(String text)
     {
         _textArea.setText(text);
@@ -210,7 +233,7 @@ public class MainFrame extends JFrame implements ChangeListener {
 
         JPanel checkBoxPanel = new JPanel();
         checkBoxPanel.setLayout(new BoxLayout(checkBoxPanel, BoxLayout.Y_AXIS));
-        JButton btnNew = new JButton(Messages.getString("MainFrame.new")); //$NON-NLS-1$
+        JButton btnNew = _btnNew;
         ActionListener l = new CheckboxActionListener(_data, btnNew);
 
         final CharSetType[] charSets = _data.getCharSet();
@@ -273,15 +296,49 @@ public class MainFrame extends JFrame implements ChangeListener {
         _minLengthTextField.addFocusListener(
                 new FocusLost(tf -> _data.setMinLength(Integer.valueOf(tf.getText()), tf)));
 
+        JLabel lblIncluded = new JLabel(Messages.getString("MainFrame.included")); //$NON-NLS-1$
+        lblIncluded.setLabelFor(_includedTextField);
+        _includedTextField.setName("Custom characters"); //$NON-NLS-1$
+        _includedTextField.setColumns(10);
+        _includedTextField.addFocusListener(new FocusLost(tf -> _data.setIncluded(tf.getText(), tf)));
+
+        JLabel lblExcluded = new JLabel(Messages.getString("MainFrame.excluded")); //$NON-NLS-1$
+        lblExcluded.setLabelFor(_excludedTextField);
+        _excludedTextField.setName("Excluded characters"); //$NON-NLS-1$
+        _excludedTextField.setColumns(10);
+        _excludedTextField.addFocusListener(new FocusLost(tf -> _data.setExcluded(tf.getText(), tf)));
+
+        JLabel lblTemplate = new JLabel(Messages.getString("MainFrame.template")); //$NON-NLS-1$
+        lblTemplate.setLabelFor(_templateTextField);
+        _templateTextField.setName("Template"); //$NON-NLS-1$
+        _templateTextField.setColumns(10);
+        _templateTextField.addFocusListener(new FocusLost(tf -> _data.setTemplate(tf.getText(), tf)));
+
+        JLabel lblMode = new JLabel(Messages.getString("MainFrame.mode")); //$NON-NLS-1$
+        lblMode.setLabelFor(_modeComboBox);
+
+        _modeComboBox.setName("Mode"); //$NON-NLS-1$
+        _modeComboBox.setSelectedItem(_data.getMode());
+        _modeComboBox.addActionListener(
+                (e) -> _data.setMode((Mode) _modeComboBox.getSelectedItem(), _modeComboBox));
+
         JPanel topPanel = new JPanel();
         topPanel.setName("Top panel"); //$NON-NLS-1$
-        topPanel.setLayout(new MigLayout("", "[77px][86px][81px][86px]", "[33px][33px][33px]")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        topPanel.setLayout(new MigLayout("", "[77px][86px][81px][86px]", "[33px][33px][33px][33px]")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         topPanel.add(lblMinimumLength, "cell 0 0,alignx left,aligny center"); //$NON-NLS-1$
         topPanel.add(_minLengthTextField, "cell 1 0,alignx center,aligny center"); //$NON-NLS-1$
         topPanel.add(lblMaximumLength, "cell 0 1,alignx left,aligny center"); //$NON-NLS-1$
         topPanel.add(_maxLengthTextField, "cell 1 1,alignx center,aligny center"); //$NON-NLS-1$
+        topPanel.add(lblMode, "cell 2 0,alignx right,aligny center"); //$NON-NLS-1$
+        topPanel.add(_modeComboBox, "cell 3 0,alignx left,aligny center"); //$NON-NLS-1$
+        topPanel.add(lblTemplate, "cell 2 1,alignx right,aligny center"); //$NON-NLS-1$
+        topPanel.add(_templateTextField, "cell 3 1,alignx left,aligny center"); //$NON-NLS-1$
 
         topPanel.add(checkBoxPanel, "cell 0 2 4 1,alignx left,aligny center"); //$NON-NLS-1$
+        topPanel.add(lblIncluded, "cell 0 3,alignx left,aligny center"); //$NON-NLS-1$
+        topPanel.add(_includedTextField, "cell 1 3,alignx center,aligny center"); //$NON-NLS-1$
+        topPanel.add(lblExcluded, "cell 2 3,alignx right,aligny center"); //$NON-NLS-1$
+        topPanel.add(_excludedTextField, "cell 3 3,alignx left,aligny center"); //$NON-NLS-1$
         innerPanel.add(topPanel, BorderLayout.NORTH);
 
         JPanel buttonPanel = new JPanel();
@@ -291,7 +348,7 @@ public class MainFrame extends JFrame implements ChangeListener {
         innerPanel.add(buttonPanel, BorderLayout.SOUTH);
 
         btnNew.setMnemonic('n');
-        btnNew.addActionListener(new NewActionListener(this, _data));
+        btnNew.addActionListener(new NewActionListener(this, Startup.pool()));
 
         JButton btnCopy = new JButton(Messages.getString("MainFrame.copy")); //$NON-NLS-1$
         btnCopy.setMnemonic('c');
@@ -302,6 +359,10 @@ public class MainFrame extends JFrame implements ChangeListener {
             clipboard.setContents(selec, selec);
         });
 
+        JButton btnBatch = new JButton(Messages.getString("MainFrame.batch")); //$NON-NLS-1$
+        btnBatch.setMnemonic('b');
+        btnBatch.addActionListener((e) -> showBatchDialog());
+
         JButton btnQuit = new JButton(Messages.getString("MainFrame.quit")); //$NON-NLS-1$
         btnQuit.setMnemonic('q');
         btnQuit.addActionListener(new QuitActionListener(mainFrame));
@@ -309,6 +370,7 @@ public class MainFrame extends JFrame implements ChangeListener {
         buttonPanel.setName("Button panel"); //$NON-NLS-1$
         buttonPanel.add(btnNew);
         buttonPanel.add(btnCopy);
+        buttonPanel.add(btnBatch);
         buttonPanel.add(btnQuit);
 
         JPanel textPanel = new JPanel();
@@ -343,6 +405,37 @@ public class MainFrame extends JFrame implements ChangeListener {
         pack();
     }
 
+    private void showBatchDialog()
+    {
+        if (_batchDialog == null)
+        {
+            final BatchPanel panel = new BatchPanel(_data);
+            _batchDialog = new JDialog(this, Messages.getString("BatchPanel.title"), false); //$NON-NLS-1$
+            _batchDialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+            _batchDialog.getContentPane().add(panel, BorderLayout.CENTER);
+            _batchDialog.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e)
+                {
+                    // Nothing generated outlives the dialog.
+                    panel.clear();
+                    _batchDialog = null;
+                }
+            });
+            _batchDialog.pack();
+            _batchDialog.setLocationRelativeTo(this);
+        }
+        _batchDialog.setVisible(true);
+    }
+
+    private static void setTextIfChanged(JTextField field, String text)
+    {
+        if (!field.getText().equals(text))
+        {
+            field.setText(text);
+        }
+    }
+
     private void setMessage(String message)
     {
         _messageArea.setText(message);
@@ -391,26 +484,45 @@ public class MainFrame extends JFrame implements ChangeListener {
         }
     }
 
+    /**
+     * Captures the window geometry on the EDT and leaves the writing to the
+     * background writer.
+     */
     private void saveToPrefs()
     {
-        Persistence p = new Persistence(getClass());
-        Preferences prefs = p.prefs();
-        prefs.putLong(Messages.getString("MainFrame.version"), serialVersionUID); //$NON-NLS-1$
-        Dimension size = getSize();
-        prefs.putInt(Messages.getString("MainFrame.width"), size.width); //$NON-NLS-1$
-        prefs.putInt(Messages.getString("MainFrame.height"), size.height); //$NON-NLS-1$
-        Point loc = getLocation();
-        prefs.putInt(Messages.getString("MainFrame.x"), loc.x); //$NON-NLS-1$
-        prefs.putInt(Messages.getString("MainFrame.y"), loc.y); //$NON-NLS-1$
+        final Dimension size = getSize();
+        final Point loc = getLocation();
+        final Class<?> owner = getClass();
+        Persistence.writeBehind(owner, () -> {
+            Persistence p = new Persistence(owner);
+            Preferences prefs = p.prefs();
+            prefs.putLong(Messages.getString("MainFrame.version"), serialVersionUID); //$NON-NLS-1$
+            prefs.putInt(Messages.getString("MainFrame.width"), size.width); //$NON-NLS-1$
+            prefs.putInt(Messages.getString("MainFrame.height"), size.height); //$NON-NLS-1$
+            prefs.putInt(Messages.getString("MainFrame.x"), loc.x); //$NON-NLS-1$
+            prefs.putInt(Messages.getString("MainFrame.y"), loc.y); //$NON-NLS-1$
+        });
     }
 
     private DataModel _data;
+    private JDialog _batchDialog;
+    private final JButton _btnNew = new JButton(Messages.getString("MainFrame.new")); //$NON-NLS-1$
     private final List<CharSetCheckBox> _checkBoxes = new ArrayList<>();
     private final JTextArea _textArea = new JTextArea();
     private final JTextArea _messageArea = new JTextArea();
     private final JTextField _minLengthTextField = new JTextField();
     private final JTextField _maxLengthTextField = new JTextField();
+    private final JTextField _includedTextField = new JTextField();
+    private final JTextField _excludedTextField = new JTextField();
+    private final JTextField _templateTextField = new JTextField();
+    private final JComboBox<Mode> _modeComboBox = new JComboBox<>(UI_MODES);
     private final Color _defaultColor = _minLengthTextField.getBackground();
+    private boolean _autoSave;
 
     private static final long serialVersionUID = 1L;
+    /**
+     * The modes this window has controls for. Passphrases need a word list,
+     * separator and word count, which can only be set programmatically.
+     */
+    private static final Mode[] UI_MODES = { Mode.RANDOM, Mode.PRONOUNCEABLE, Mode.TEMPLATE };
 }
@@ -20,16 +20,16 @@ package d_j_phredrix.pwgen.ui.utils;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
-import d_j_phredrix.pwgen.core.DataModel;
-import d_j_phredrix.pwgen.core.Generator;
+import d_j_phredrix.pwgen.core.PasswordPool;
+import d_j_phredrix.pwgen.core.SecretBuffer;
 import d_j_phredrix.pwgen.ui.MainFrame;
 
 public final class NewActionListener implements ActionListener {
 
-    public NewActionListener(MainFrame mf, DataModel data)
+    public NewActionListener(MainFrame mf, PasswordPool pool)
     {
         _mf = mf;
-        _data = data;
+        _pool = pool;
     }
 
     /* (non-Javadoc)
@@ -38,18 +38,16 @@ public final class NewActionListener implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e)
     {
-        _mf.setText(getPassword());
-    }
-
-    private String getPassword()
-    {
-        final String characterSet = _gen.getCharacterSet(_data.getCharSet());
-        final int minLength = _data.getMinLength();
-        final int maxLength = _data.getMaxLength();
-        return _gen.createPassword(characterSet, minLength, maxLength);
+        try (SecretBuffer password = _pool.take())
+        {
+            _mf.setText(password);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            _mf.exceptionOccurred(ex, null);
+        }
     }
 
     private MainFrame _mf;
-    private DataModel _data;
-    private Generator _gen = new Generator();
+    private PasswordPool _pool;
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Don Fredricks.
+ *
+ * This file is part of the pwgen project (https://github.com/phredrix/pwgen-java).
+ *
+ * pwgen is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * pwgen is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * pwgen.  If not, see http://www.gnu.org/licenses/.
+ *******************************************************************************/
+
+package d_j_phredrix.pwgen.core;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link SymbolMapper} on the Vector API. Random bytes are widened to
+ * 16-bit lanes a whole vector at a time, and the multiply-shift and the
+ * accept test run on every lane at once, yielding an index plus an accept
+ * bit per byte; a branch-free scalar pass then looks the accepted indices
+ * up and packs them into the output, in byte order. Where less than a
+ * vector of output or of buffered bytes is left, it falls back to the
+ * scalar loop of its superclass, so that the characters produced are the
+ * same as without the module.
+ * <p>
+ * The lookup and packing stay scalar because the shuffle and mask-to-bits
+ * operations they would need are not compiled to vector instructions on
+ * JDK 17. Takes alphabets of up to 256 characters without supplementary
+ * ones.
+ * <p>
+ * Kept in the separate {@code vector} source root, which only compiles with
+ * {@code --add-modules jdk.incubator.vector}; the core builds and runs
+ * without it. Loaded reflectively by {@link SymbolMapper}; nothing else may
+ * refer to this class.
+ */
+final class VectorSymbolMapper extends SymbolMapper {
+
+    /**
+     * @return false if the preferred vector shape is too narrow to beat the
+     *         scalar loop, in which case {@link SymbolMapper} does not use
+     *         this class
+     */
+    static boolean isUseful()
+    {
+        return LANES >= MIN_LANES;
+    }
+
+    @Override
+    void fill(char[] alphabet, char[] dest, int from, int to, RandomIndexSource random)
+    {
+        if (alphabet != _alphabet)
+        {
+            // Padded so that any code indexes it without a bounds check.
+            _alphabet = alphabet;
+            _table = Arrays.copyOf(alphabet, TABLE_SIZE);
+        }
+        final char[] table = _table;
+        final short n = (short) alphabet.length;
+        final short threshold = (short) (TABLE_SIZE % n);
+        final short[] codes = _codes;
+        int pos = from;
+        while (pos < to)
+        {
+            if (_randomPos == RANDOM_BLOCK)
+            {
+                refill(random);
+            }
+            if (to - pos < LANES || _randomPos % LANES != 0)
+            {
+                // Up to the next vector boundary, or to the end.
+                pos = map(alphabet, dest, pos, to, _randomPos - _randomPos % LANES + LANES);
+                continue;
+            }
+            final ShortVector bytes = (ShortVector) ByteVector.fromArray(BYTE_SPECIES, _random, _randomPos)
+                    .convertShape(VectorOperators.B2S, SPECIES, 0);
+            _randomPos += LANES;
+            map(bytes.and((short) 0xFF), n, threshold).intoArray(codes, 0);
+            // At most LANES accepted, so every write is below to.
+            for (int ii = 0; ii < LANES; ++ii)
+            {
+                final int code = codes[ii];
+                dest[pos] = table[code & 0xFF];
+                pos += code >>> 8;
+            }
+        }
+        Arrays.fill(codes, (short) 0);
+        wipeUsed();
+    }
+
+    /**
+     * @return for each byte in {@code bytes}, its index into the alphabet,
+     *         plus 256 if it is accepted
+     */
+    private static ShortVector map(ShortVector bytes, short n, short threshold)
+    {
+        final ShortVector product = bytes.mul(n);
+        final VectorMask<Short> accepted = product.and((short) 0xFF).compare(VectorOperators.GE, threshold);
+        return product.lanewise(VectorOperators.LSHR, 8).add((short) TABLE_SIZE, accepted);
+    }
+
+    private char[] _alphabet;
+    private char[] _table;
+    private final short[] _codes = new short[LANES];
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    /** Bytes for one vector of shorts: half the width. */
+    private static final VectorSpecies<Byte> BYTE_SPECIES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(Math.max(64, LANES * Byte.SIZE)));
+    /** 128-bit vectors; anything narrower is left to the scalar path. */
+    private static final int MIN_LANES = 8;
+}